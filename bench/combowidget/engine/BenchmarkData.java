@@ -0,0 +1,49 @@
+package combowidget.engine;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates benchmark inputs shaped like {@code Data.ITEMS} of the
+ * playground: a four digit code followed by a word, e.g.
+ * {@code "1750 - breeze"}. The generator is seeded, so every run searches the
+ * same input.
+ */
+final class BenchmarkData {
+
+    private static final String[] SYLLABLES = { "bre", "eze", "ri", "ch", "in", "sis", "ten", "ce", "ar", "chi",
+            "tec", "ture", "ap", "plaud", "fil", "ter", "bri", "de", "po", "li", "cy", "mo", "ra", "lo", "ve",
+            "sta", "ti", "on", "gar", "den" };
+
+    private BenchmarkData() {
+    }
+
+    static String[] items(int size) {
+        Random random = new Random(size);
+        String[] items = new String[size];
+        for (int i = 0; i < size; i++) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 1 + random.nextInt(4);
+            for (int j = 0; j < syllables; j++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            items[i] = (1000 + random.nextInt(9000)) + " - " + word;
+        }
+        return items;
+    }
+
+    /**
+     * The snapshot the viewer would search: the items in comparator order
+     * (natural order for strings) together with their search keys.
+     */
+    static SearchSnapshot snapshot(int size) {
+        String[] items = items(size);
+        Arrays.sort(items);
+        SearchKey[] keys = new SearchKey[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = new SearchKey(items[i]);
+        }
+        return new SearchSnapshot(items, keys);
+    }
+
+}
@@ -0,0 +1,35 @@
+package combowidget.engine;
+
+/**
+ * Checks the regex step budget outside of the benchmarks: the budget is
+ * granted per key, so a linear expression has to complete on the largest
+ * benchmark input while a pathological one is abandoned. Fails with an
+ * {@link IllegalStateException} otherwise.
+ */
+public final class RegexBudgetCheck {
+
+    private RegexBudgetCheck() {
+    }
+
+    public static void main(String[] args) {
+        SearchSnapshot snapshot = BenchmarkData.snapshot(1000000);
+        FilterResult linear = evaluate(".*ee.*", snapshot);
+        if (linear.isBudgetExceeded() || linear.getMatchCount() == 0) {
+            throw new IllegalStateException("Linear regex was abandoned on " + snapshot.size() + " keys");
+        }
+
+        String key = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaa!";
+        FilterResult pathological = evaluate("(.*a){12}",
+                new SearchSnapshot(new Object[] { key }, new SearchKey[] { new SearchKey(key) }));
+        if (!pathological.isBudgetExceeded()) {
+            throw new IllegalStateException("Pathological regex was not abandoned");
+        }
+    }
+
+    private static FilterResult evaluate(String regex, SearchSnapshot snapshot) {
+        return FilterResult.evaluate(CompiledQuery.regex(regex), snapshot, null,
+                SearchEngine.DEFAULT_REGEX_STEPS_PER_CHAR, SearchEngine.DEFAULT_PARALLEL_MATCHING_THRESHOLD,
+                Integer.MAX_VALUE, () -> false);
+    }
+
+}
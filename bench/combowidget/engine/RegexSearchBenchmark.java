@@ -0,0 +1,50 @@
+package combowidget.engine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * RegEx search and filter ({@code regexSearchAndFilter()}) with the viewer's
+ * default settings. The query is compiled per invocation, as the viewer does
+ * per key sequence change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RegexSearchBenchmark {
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int size;
+
+    /*
+     * Anchored prefix, unanchored substring, alternation, no match.
+     */
+    @Param({ "17[0-9]{2} - b.*", ".*ee.*", "\\d+ - (rich|filter)", "xyz.*" })
+    public String query;
+
+    @Param({ "500", "2147483647" })
+    public int matchLimit;
+
+    private SearchSnapshot snapshot;
+
+    @Setup
+    public void setUp() {
+        snapshot = BenchmarkData.snapshot(size);
+    }
+
+    @Benchmark
+    public FilterResult evaluate() {
+        return FilterResult.evaluate(CompiledQuery.regex(query), snapshot, null,
+                SearchEngine.DEFAULT_REGEX_STEPS_PER_CHAR,
+                SearchEngine.DEFAULT_PARALLEL_MATCHING_THRESHOLD, matchLimit, () -> false);
+    }
+
+}
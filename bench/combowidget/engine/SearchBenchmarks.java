@@ -0,0 +1,30 @@
+package combowidget.engine;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all search benchmarks with the GC profiler, which reports the
+ * allocation rate ({@code gc.alloc.rate.norm} is bytes per operation) next to
+ * the throughput.
+ */
+public final class SearchBenchmarks {
+
+    private SearchBenchmarks() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SearchBenchmarks.class.getPackage().getName() + ".*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+        new Runner(options).run();
+    }
+
+}
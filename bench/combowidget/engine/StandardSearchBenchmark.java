@@ -0,0 +1,55 @@
+package combowidget.engine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Type-ahead search ({@code standardSearch()}): the prefix index is built
+ * once per item change, every keystroke is a lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StandardSearchBenchmark {
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int size;
+
+    /*
+     * Short prefix, long prefix, no match.
+     */
+    @Param({ "1", "1750 - b", "zzz" })
+    public String prefix;
+
+    private String[] folded;
+    private PrefixIndex index;
+
+    @Setup
+    public void setUp() {
+        SearchSnapshot snapshot = BenchmarkData.snapshot(size);
+        folded = new String[snapshot.size()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = snapshot.getKey(i).folded;
+        }
+        index = PrefixIndex.build(folded);
+    }
+
+    @Benchmark
+    public int firstMatch() {
+        return index.firstMatch(prefix);
+    }
+
+    @Benchmark
+    public PrefixIndex buildIndex() {
+        return PrefixIndex.build(folded);
+    }
+
+}
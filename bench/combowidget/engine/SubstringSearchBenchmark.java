@@ -0,0 +1,63 @@
+package combowidget.engine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Substring search and filter ({@code substrSearchAndFilter()}) with the
+ * viewer's default settings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SubstringSearchBenchmark {
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int size;
+
+    /*
+     * Short, long, wildcard, no match.
+     */
+    @Param({ "re", "1750 - breeze", "b*ze", "qqq" })
+    public String query;
+
+    /*
+     * The default result window and no window at all.
+     */
+    @Param({ "500", "2147483647" })
+    public int matchLimit;
+
+    private SearchSnapshot snapshot;
+    private TrigramIndex trigramIndex;
+    private CompiledQuery compiledQuery;
+
+    @Setup
+    public void setUp() {
+        snapshot = BenchmarkData.snapshot(size);
+        trigramIndex = TrigramIndex.build(snapshot);
+        compiledQuery = CompiledQuery.substring(query);
+    }
+
+    @Benchmark
+    public FilterResult scan() {
+        return FilterResult.evaluate(CompiledQuery.substring(query), snapshot, null,
+                SearchEngine.DEFAULT_REGEX_STEPS_PER_CHAR, SearchEngine.DEFAULT_PARALLEL_MATCHING_THRESHOLD, matchLimit,
+                () -> false);
+    }
+
+    @Benchmark
+    public FilterResult indexed() {
+        int[] candidates = trigramIndex.candidates(compiledQuery.literalSegments());
+        return FilterResult.evaluate(compiledQuery, snapshot, candidates, SearchEngine.DEFAULT_REGEX_STEPS_PER_CHAR,
+                SearchEngine.DEFAULT_PARALLEL_MATCHING_THRESHOLD, matchLimit, () -> false);
+    }
+
+}
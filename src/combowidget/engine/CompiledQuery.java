@@ -0,0 +1,298 @@
+package combowidget.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A filter query which is compiled once per key sequence change and then
+ * shared by every consumer which has to test elements against it (the "has
+ * results" probe, the installed viewer filter, ...). Queries are usually
+ * compiled by a {@link MatchStrategy}.
+ *
+ * <p>
+ * Substring queries are evaluated by a {@link GlobMatcher}, fuzzy queries by
+ * a {@link FuzzyMatcher}, only regex queries use the regex engine. Numeric
+ * queries are not matched element by element but looked up in a
+ * {@link NumericKeyIndex}. An invalid query does not throw. Use
+ * {@link #isValid()} and {@link #getErrorMessage()} to report the problem to
+ * the user instead.
+ * </p>
+ */
+public final class CompiledQuery {
+
+    public enum Mode {
+        PREFIX, SUBSTRING, REGEX, FUZZY, NUMERIC, CUSTOM
+    }
+
+    private final Mode mode;
+    private final String field;
+    private final String text;
+    private final String prefix;
+    private final GlobMatcher glob;
+    private final Pattern pattern;
+    private final FuzzyMatcher fuzzy;
+    private final Predicate<String> custom;
+    private final int resultLimit;
+    private final long rangeFrom;
+    private final long rangeTo;
+    private final String errorMessage;
+
+    private CompiledQuery(Mode mode, String field, String text, GlobMatcher glob, Pattern pattern,
+            FuzzyMatcher fuzzy, Predicate<String> custom, int resultLimit, String errorMessage) {
+        this.mode = mode;
+        this.field = field;
+        this.text = text;
+        this.prefix = mode == Mode.PREFIX ? text.toLowerCase() : null;
+        this.glob = glob;
+        this.pattern = pattern;
+        this.fuzzy = fuzzy;
+        this.custom = custom;
+        this.resultLimit = resultLimit;
+        this.rangeFrom = 0;
+        this.rangeTo = -1;
+        this.errorMessage = errorMessage;
+    }
+
+    private CompiledQuery(String text, long rangeFrom, long rangeTo, String errorMessage) {
+        this.mode = Mode.NUMERIC;
+        this.field = null;
+        this.text = text;
+        this.prefix = null;
+        this.glob = null;
+        this.pattern = null;
+        this.fuzzy = null;
+        this.custom = null;
+        this.resultLimit = Integer.MAX_VALUE;
+        this.rangeFrom = rangeFrom;
+        this.rangeTo = rangeTo;
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * Case-insensitive prefix query. No wildcards.
+     */
+    public static CompiledQuery prefix(String text) {
+        return new CompiledQuery(Mode.PREFIX, null, text, null, null, null, null, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Case-insensitive substring query. {@code *} can be used as a wildcard.
+     *
+     * @param text The query without the escape char.
+     */
+    public static CompiledQuery substring(String text) {
+        return substring(null, text);
+    }
+
+    /**
+     * Case-insensitive substring query against a search field.
+     *
+     * @param field The name of the search field or {@code null} for the
+     *        default search key.
+     * @param text The query without the field name and escape char.
+     */
+    public static CompiledQuery substring(String field, String text) {
+        return new CompiledQuery(Mode.SUBSTRING, field, text, new GlobMatcher(text.toLowerCase()), null, null, null,
+                Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Case-sensitive regex query.
+     *
+     * @param text The query without the escape chars.
+     */
+    public static CompiledQuery regex(String text) {
+        try {
+            return new CompiledQuery(Mode.REGEX, null, text, null, Pattern.compile(text), null, null,
+                    Integer.MAX_VALUE, null);
+        } catch (PatternSyntaxException e) {
+            return new CompiledQuery(Mode.REGEX, null, text, null, null, null, null, Integer.MAX_VALUE,
+                    e.getDescription());
+        }
+    }
+
+    /**
+     * Case-insensitive fuzzy (subsequence) query. Only the best matches are
+     * kept, ordered by relevance.
+     *
+     * @param text The query without the escape char.
+     * @param resultLimit The maximum number of matches to keep.
+     */
+    public static CompiledQuery fuzzy(String text, int resultLimit) {
+        return new CompiledQuery(Mode.FUZZY, null, text, null, null, new FuzzyMatcher(text.toLowerCase()), null,
+                resultLimit, null);
+    }
+
+    /**
+     * Exact ({@code 1750}) or range ({@code 1200..1300}) query on numeric
+     * keys. Either bound of a range may be omitted.
+     *
+     * @param text The query without the escape char.
+     */
+    public static CompiledQuery numeric(String text) {
+
+        int separator = text.indexOf("..");
+        String from = separator < 0 ? text : text.substring(0, separator);
+        String to = separator < 0 ? text : text.substring(separator + 2);
+
+        long rangeFrom = from.isEmpty() && separator >= 0 ? 0 : parseNumericKey(from);
+        long rangeTo = to.isEmpty() && separator >= 0 ? Long.MAX_VALUE : parseNumericKey(to);
+
+        if (rangeFrom < 0 || rangeTo < 0) {
+            return new CompiledQuery(text, 0, -1, "erwartet wird <Code> oder <von>..<bis>");
+        }
+        return new CompiledQuery(text, rangeFrom, rangeTo, null);
+    }
+
+    /**
+     * Query which tests every key with a custom predicate.
+     *
+     * @param predicate Tests the search key (not case-folded) of an element.
+     *        Must not have side effects, it may be called from several
+     *        threads at once.
+     */
+    public static CompiledQuery custom(String text, Predicate<String> predicate) {
+        return new CompiledQuery(Mode.CUSTOM, null, text, null, null, null, predicate, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Custom query which could not be compiled.
+     */
+    static CompiledQuery invalidCustom(String text, String errorMessage) {
+        return new CompiledQuery(Mode.CUSTOM, null, text, null, null, null, null, Integer.MAX_VALUE, errorMessage);
+    }
+
+    /*
+     * Returns -1 unless the text consists of digits only and fits into a key.
+     */
+    private static long parseNumericKey(String text) {
+        if (text.isEmpty() || !text.chars().allMatch(NumericKeyIndex::isDigit)) {
+            return -1;
+        }
+        return NumericKeyIndex.parse(text);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return The name of the searched field or {@code null} if the query
+     *         matches against the default search key.
+     */
+    public String getField() {
+        return field;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return The maximum number of matches to keep. Only limited for fuzzy
+     *         queries.
+     */
+    public int getResultLimit() {
+        return resultLimit;
+    }
+
+    /**
+     * @return The lower bound (inclusive) of a numeric query.
+     */
+    public long getRangeFrom() {
+        return rangeFrom;
+    }
+
+    /**
+     * @return The upper bound (inclusive) of a numeric query.
+     */
+    public long getRangeTo() {
+        return rangeTo;
+    }
+
+    public boolean isValid() {
+        return errorMessage == null;
+    }
+
+    /**
+     * @return Description of the syntax error or {@code null} if the query is
+     *         valid.
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * @return The case-folded literal parts of a substring or prefix query
+     *         which every matching key must contain. Empty for other queries.
+     */
+    List<String> literalSegments() {
+        if (mode == Mode.PREFIX) {
+            return Collections.singletonList(prefix);
+        }
+        if (mode != Mode.SUBSTRING) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(glob.getSegments());
+    }
+
+    /**
+     * A query refines a previous query if every element matched by this query
+     * is also matched by the previous one. This is the case if a substring or
+     * prefix query on the same field was extended by appending chars. A regex
+     * query never refines another query (e.g. appending {@code *} widens a
+     * regex), neither does a custom query.
+     *
+     * @param previous May be {@code null}.
+     */
+    boolean refines(CompiledQuery previous) {
+        return previous != null && (mode == Mode.SUBSTRING || mode == Mode.PREFIX) && previous.mode == mode
+                && Objects.equals(field, previous.field) && text.startsWith(previous.text);
+    }
+
+    /**
+     * @param budget Limits the work spent on regex queries. Substring queries
+     *        are evaluated in linear time and do not consume the budget.
+     * @return {@code false} if the key does not match or if the query is
+     *         invalid.
+     * @throws MatchBudgetExceededException If the budget is used up.
+     */
+    boolean matches(SearchKey key, MatchBudget budget) {
+        switch (mode) {
+        case PREFIX:
+            return key.folded.startsWith(prefix);
+        case SUBSTRING:
+            return glob.matches(key.folded);
+        case FUZZY:
+            return fuzzy.score(key.folded) != FuzzyMatcher.NO_MATCH;
+        case NUMERIC:
+            return matchesNumericKey(NumericKeyIndex.parse(key.label));
+        case CUSTOM:
+            return custom != null && custom.test(key.label);
+        default:
+            return pattern != null && pattern.matcher(budget.wrap(key.label)).matches();
+        }
+    }
+
+    /*
+     * Numeric queries are usually answered by the NumericKeyIndex. Tested
+     * directly the key is parsed from the label like the index does.
+     */
+    private boolean matchesNumericKey(long numericKey) {
+        return numericKey >= 0 && numericKey >= rangeFrom && numericKey <= rangeTo;
+    }
+
+    /**
+     * @return The relevance of the key for a fuzzy query (higher is better) or
+     *         {@link FuzzyMatcher#NO_MATCH}.
+     */
+    int score(SearchKey key) {
+        return fuzzy.score(key.folded);
+    }
+
+}
@@ -0,0 +1,410 @@
+package combowidget.engine;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The outcome of evaluating a {@link CompiledQuery} against a
+ * {@link SearchSnapshot}.
+ *
+ * <p>
+ * Evaluation does not touch any widget and may run on any thread.
+ * </p>
+ */
+public final class FilterResult {
+
+    private static final int[] NO_MATCHES = new int[0];
+
+    /*
+     * The cancellation flag is polled once per this many candidates.
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 256;
+
+    /*
+     * Parallel evaluation does not split ranges below this size.
+     */
+    private static final int MIN_PARALLEL_CHUNK_SIZE = 2048;
+
+    private final CompiledQuery query;
+    private final SearchSnapshot snapshot;
+    private final int[] candidates;
+    private final int[] matches;
+    private final int totalMatchCount;
+    private final int resumeIndex;
+    private final int testedCount;
+    private final boolean budgetExceeded;
+
+    /*
+     * A complete result which was not found by testing elements.
+     */
+    private FilterResult(CompiledQuery query, SearchSnapshot snapshot, int[] matches, boolean budgetExceeded) {
+        this(query, snapshot, null, matches, matches.length, snapshot.size(), 0, budgetExceeded);
+    }
+
+    private FilterResult(CompiledQuery query, SearchSnapshot snapshot, int[] candidates, int[] matches,
+            int totalMatchCount, int resumeIndex, boolean budgetExceeded) {
+        this(query, snapshot, candidates, matches, totalMatchCount, resumeIndex, resumeIndex, budgetExceeded);
+    }
+
+    private FilterResult(CompiledQuery query, SearchSnapshot snapshot, int[] candidates, int[] matches,
+            int totalMatchCount, int resumeIndex, int testedCount, boolean budgetExceeded) {
+        this.query = query;
+        this.snapshot = snapshot;
+        this.candidates = candidates;
+        this.matches = matches;
+        this.totalMatchCount = totalMatchCount;
+        this.resumeIndex = resumeIndex;
+        this.testedCount = testedCount;
+        this.budgetExceeded = budgetExceeded;
+    }
+
+    /**
+     * @param candidates Ascending positions of the elements which have to be
+     *        tested or {@code null} to test the whole snapshot.
+     * @param stepsPerChar The regex step budget per char of a key, see
+     *        {@link MatchBudget}.
+     * @param parallelThreshold If at least this many elements have to be
+     *        tested they are split across all cores.
+     * @param matchLimit Evaluation of substring and regex queries may stop as
+     *        soon as more than this many matches were found. Use
+     *        {@link #resume(int, long, int, BooleanSupplier)} to find the
+     *        remaining matches. {@link Integer#MAX_VALUE} evaluates the query
+     *        completely.
+     * @param cancelled Polled regularly. Evaluation stops with a
+     *        {@link CancellationException} as soon as it returns {@code true}.
+     */
+    static FilterResult evaluate(CompiledQuery query, SearchSnapshot snapshot, int[] candidates, long stepsPerChar,
+            int parallelThreshold, int matchLimit, BooleanSupplier cancelled) {
+
+        if (!query.isValid()) {
+            return new FilterResult(query, snapshot, NO_MATCHES, false);
+        }
+
+        int count = candidates == null ? snapshot.size() : candidates.length;
+
+        if (query.getMode() == CompiledQuery.Mode.FUZZY) {
+            return rank(query, snapshot, candidates, count, cancelled);
+        }
+
+        FilterResult result = scan(query, snapshot, candidates, 0, matchLimit, stepsPerChar, parallelThreshold,
+                cancelled);
+        return result == null ? new FilterResult(query, snapshot, NO_MATCHES, true) : result;
+    }
+
+    /**
+     * @param matches Ascending positions of the matching elements, e.g. looked
+     *        up in an index.
+     */
+    static FilterResult of(CompiledQuery query, SearchSnapshot snapshot, int[] matches) {
+        return new FilterResult(query, snapshot, matches, false);
+    }
+
+    /**
+     * Continues an incomplete evaluation.
+     *
+     * @param matchLimit The evaluation may stop as soon as more than this many
+     *        matches (including the matches found so far) were found.
+     * @return A result which contains the matches found so far followed by the
+     *         newly found matches. If the budget is used up the matches found
+     *         so far are kept and the result stays incomplete.
+     * @see #evaluate(CompiledQuery, SearchSnapshot, int[], long, int, int,
+     *      BooleanSupplier)
+     */
+    public FilterResult resume(int matchLimit, long stepsPerChar, int parallelThreshold, BooleanSupplier cancelled) {
+
+        if (isComplete() || budgetExceeded) {
+            return this;
+        }
+
+        FilterResult rest = scan(query, snapshot, candidates, resumeIndex, Math.max(0, matchLimit - matches.length),
+                stepsPerChar, parallelThreshold, cancelled);
+        if (rest == null) {
+            return new FilterResult(query, snapshot, candidates, matches, matches.length, resumeIndex, true);
+        }
+
+        int[] allMatches = concat(matches, rest.matches);
+        return new FilterResult(query, snapshot, candidates, allMatches, allMatches.length, rest.resumeIndex, false);
+    }
+
+    /*
+     * Tests the candidates from the given index on. Without a match limit the
+     * remaining candidates are tested at once. Otherwise they are tested in
+     * blocks of growing size until more than matchLimit matches were found, so
+     * a dense result is cut short after a few elements while a sparse result
+     * still ends up in large (parallel) blocks.
+     *
+     * Returns null if the budget is used up.
+     */
+    private static FilterResult scan(CompiledQuery query, SearchSnapshot snapshot, int[] candidates, int from,
+            int matchLimit, long stepsPerChar, int parallelThreshold, BooleanSupplier cancelled) {
+
+        int count = candidates == null ? snapshot.size() : candidates.length;
+        MatchBudget budget = new MatchBudget(stepsPerChar);
+        int[] matches = NO_MATCHES;
+        int blockSize = matchLimit == Integer.MAX_VALUE ? count
+                : (int) Math.max(MIN_PARALLEL_CHUNK_SIZE, Math.min(count, matchLimit * 2L));
+
+        try {
+            while (from < count && matches.length <= matchLimit) {
+                int to = (int) Math.min(count, (long) from + blockSize);
+                matches = concat(matches, matchRange(query, snapshot, candidates, from, to, budget, parallelThreshold,
+                        cancelled));
+                from = to;
+                blockSize = (int) Math.min(Integer.MAX_VALUE, blockSize * 2L);
+            }
+        } catch (MatchBudgetExceededException e) {
+            return null;
+        }
+
+        return new FilterResult(query, snapshot, candidates, matches, matches.length, from, false);
+    }
+
+    private static int[] matchRange(CompiledQuery query, SearchSnapshot snapshot, int[] candidates, int from, int to,
+            MatchBudget budget, int parallelThreshold, BooleanSupplier cancelled) {
+        if (to - from >= parallelThreshold) {
+            return ParallelMatcher.POOL.invoke(new MatchTask(query, snapshot, candidates, from, to, budget, cancelled,
+                    chunkSize(to - from)));
+        }
+        return match(query, snapshot, candidates, from, to, budget, cancelled);
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /*
+     * Keeps the best matches of a fuzzy query in a bounded min-heap, so the
+     * matches never have to be sorted as a whole.
+     */
+    private static FilterResult rank(CompiledQuery query, SearchSnapshot snapshot, int[] candidates, int count,
+            BooleanSupplier cancelled) {
+
+        int limit = query.getResultLimit();
+        PriorityQueue<RankedPosition> best = new PriorityQueue<>();
+        int total = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (i % CANCELLATION_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            int position = candidates == null ? i : candidates[i];
+            int score = query.score(snapshot.getKey(position));
+            if (score == FuzzyMatcher.NO_MATCH) {
+                continue;
+            }
+            total++;
+            if (best.size() < limit) {
+                best.add(new RankedPosition(position, score));
+            } else if (score > best.peek().score) {
+                best.poll();
+                best.add(new RankedPosition(position, score));
+            }
+        }
+
+        int[] matches = new int[best.size()];
+        for (int i = matches.length - 1; i >= 0; i--) {
+            matches[i] = best.poll().position;
+        }
+        return new FilterResult(query, snapshot, candidates, matches, total, count, false);
+    }
+
+    private static int chunkSize(int count) {
+        // a few chunks per core so that cores finishing early can steal work
+        int chunks = ParallelMatcher.POOL.getParallelism() * 4;
+        return Math.max(MIN_PARALLEL_CHUNK_SIZE, count / chunks + 1);
+    }
+
+    /*
+     * Tests the candidates in [from, to). Returns the ascending positions of
+     * the matches.
+     */
+    private static int[] match(CompiledQuery query, SearchSnapshot snapshot, int[] candidates, int from, int to,
+            MatchBudget budget, BooleanSupplier cancelled) {
+
+        int[] matches = new int[to - from];
+        int matchCount = 0;
+
+        for (int i = from; i < to; i++) {
+            if ((i - from) % CANCELLATION_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            int position = candidates == null ? i : candidates[i];
+            if (query.matches(snapshot.getKey(position), budget)) {
+                matches[matchCount++] = position;
+            }
+        }
+
+        return matchCount == matches.length ? matches : Arrays.copyOf(matches, matchCount);
+    }
+
+    public CompiledQuery getQuery() {
+        return query;
+    }
+
+    SearchSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return The number of elements the query was evaluated against.
+     */
+    public int getElementCount() {
+        return snapshot.size();
+    }
+
+    /**
+     * @return Ascending positions of the matching elements. For fuzzy queries
+     *         the best matches ordered by relevance (best match first).
+     */
+    public int[] getMatches() {
+        return matches;
+    }
+
+    public int getMatchCount() {
+        return matches.length;
+    }
+
+    /**
+     * @return The number of matching elements including matches which were
+     *         dropped because of the query's result limit. Only the number of
+     *         matches found so far if the result is not complete.
+     */
+    public int getTotalMatchCount() {
+        return totalMatchCount;
+    }
+
+    public Object[] getMatchedElements() {
+        return getMatchedElements(matches.length);
+    }
+
+    /**
+     * @return The first (at most) limit matched elements.
+     */
+    public Object[] getMatchedElements(int limit) {
+        Object[] elements = new Object[Math.min(limit, matches.length)];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = snapshot.getElement(matches[i]);
+        }
+        return elements;
+    }
+
+    /**
+     * @return The number of elements which were tested against the query.
+     *         {@code 0} if the result was looked up in an index, if the query
+     *         is invalid or if the budget was used up.
+     */
+    public int getTestedCount() {
+        return testedCount;
+    }
+
+    /**
+     * @return {@code false} if the evaluation stopped early because of a match
+     *         limit, i.e. if there may be more matches than
+     *         {@link #getMatches()} returns.
+     */
+    public boolean isComplete() {
+        int count = candidates == null ? snapshot.size() : candidates.length;
+        return resumeIndex >= count;
+    }
+
+    /**
+     * @return {@code true} if the query was abandoned because its
+     *         {@link MatchBudget} was used up.
+     */
+    public boolean isBudgetExceeded() {
+        return budgetExceeded;
+    }
+
+    /*
+     * Heap entry. The worst match is at the head of the heap: lowest score
+     * first and, for equal scores, the later position first.
+     */
+    private static final class RankedPosition implements Comparable<RankedPosition> {
+
+        private final int position;
+        private final int score;
+
+        RankedPosition(int position, int score) {
+            this.position = position;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(RankedPosition other) {
+            if (score != other.score) {
+                return Integer.compare(score, other.score);
+            }
+            return Integer.compare(other.position, position);
+        }
+    }
+
+    /*
+     * Lazily creates the pool used for parallel evaluation.
+     */
+    private static final class ParallelMatcher {
+        private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /*
+     * Splits the candidate range until it is small enough and concatenates the
+     * partial results in range order, so positions stay ascending.
+     */
+    private static final class MatchTask extends RecursiveTask<int[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CompiledQuery query;
+        private final SearchSnapshot snapshot;
+        private final int[] candidates;
+        private final int from;
+        private final int to;
+        private final MatchBudget budget;
+        private final BooleanSupplier cancelled;
+        private final int chunkSize;
+
+        MatchTask(CompiledQuery query, SearchSnapshot snapshot, int[] candidates, int from, int to, MatchBudget budget,
+                BooleanSupplier cancelled, int chunkSize) {
+            this.query = query;
+            this.snapshot = snapshot;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.budget = budget;
+            this.cancelled = cancelled;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected int[] compute() {
+
+            if (to - from <= chunkSize) {
+                return match(query, snapshot, candidates, from, to, budget, cancelled);
+            }
+
+            int middle = (from + to) >>> 1;
+            MatchTask left = new MatchTask(query, snapshot, candidates, from, middle, budget.fork(), cancelled,
+                    chunkSize);
+            MatchTask right = new MatchTask(query, snapshot, candidates, middle, to, budget.fork(), cancelled,
+                    chunkSize);
+
+            left.fork();
+            int[] rightMatches = right.compute();
+            int[] leftMatches = left.join();
+
+            return concat(leftMatches, rightMatches);
+        }
+    }
+
+}
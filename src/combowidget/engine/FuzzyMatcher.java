@@ -0,0 +1,102 @@
+package combowidget.engine;
+
+/**
+ * Case-insensitive fuzzy matcher in the spirit of fzf.
+ *
+ * <p>
+ * A key matches if it contains the chars of the pattern as a subsequence.
+ * Matches are scored: every matched char scores, chars at word boundaries
+ * and runs of consecutive chars score extra, gaps between matched chars and
+ * a late start cost points. The shortest window containing the subsequence
+ * is scored. Word boundaries weigh more than contiguity, so {@code "brz"}
+ * ranks {@code "b rz"} (75) and {@code "b... rz"} (72) above
+ * {@code "breeze"} (62), where the {@code 'z'} follows a gap inside a word.
+ * A long gap inside a word ranks lowest, e.g. {@code "bxxxxxxxxrz"} (56).
+ * </p>
+ */
+final class FuzzyMatcher {
+
+    static final int NO_MATCH = Integer.MIN_VALUE;
+
+    private static final int SCORE_MATCH = 16;
+    private static final int BONUS_BOUNDARY = 12;
+    private static final int BONUS_CONSECUTIVE = 6;
+    private static final int PENALTY_GAP_START = 3;
+    private static final int PENALTY_GAP_EXTENSION = 1;
+    private static final int MAX_LEADING_PENALTY = 12;
+
+    private final String pattern;
+
+    /**
+     * @param foldedPattern The case-folded pattern.
+     */
+    FuzzyMatcher(String foldedPattern) {
+        this.pattern = foldedPattern;
+    }
+
+    /**
+     * @param foldedKey The case-folded key.
+     * @return The score of the key (higher is better) or {@link #NO_MATCH}.
+     */
+    int score(String foldedKey) {
+
+        int patternLength = pattern.length();
+        if (patternLength == 0) {
+            return 0;
+        }
+
+        // forward pass: end of the leftmost occurrence of the subsequence
+        int end = -1;
+        for (int i = 0, p = 0; i < foldedKey.length(); i++) {
+            if (foldedKey.charAt(i) == pattern.charAt(p) && ++p == patternLength) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return NO_MATCH;
+        }
+
+        // backward pass: latest start which still contains the subsequence
+        int start = end;
+        for (int i = end, p = patternLength - 1; i >= 0; i--) {
+            if (foldedKey.charAt(i) == pattern.charAt(p) && --p < 0) {
+                start = i;
+                break;
+            }
+        }
+
+        int score = -Math.min(start, MAX_LEADING_PENALTY);
+        int previous = -2;
+        boolean inGap = false;
+        for (int i = start, p = 0; i <= end && p < patternLength; i++) {
+            if (foldedKey.charAt(i) == pattern.charAt(p)) {
+                score += SCORE_MATCH;
+                if (isWordBoundary(foldedKey, i)) {
+                    score += BONUS_BOUNDARY;
+                }
+                if (previous == i - 1) {
+                    score += BONUS_CONSECUTIVE;
+                }
+                previous = i;
+                inGap = false;
+                p++;
+            } else {
+                score -= inGap ? PENALTY_GAP_EXTENSION : PENALTY_GAP_START;
+                inGap = true;
+            }
+        }
+
+        return score;
+    }
+
+    private static boolean isWordBoundary(String key, int index) {
+        if (index == 0) {
+            return true;
+        }
+        char previous = key.charAt(index - 1);
+        char current = key.charAt(index);
+        return !Character.isLetterOrDigit(previous) || Character.isDigit(previous) != Character.isDigit(current);
+    }
+
+}
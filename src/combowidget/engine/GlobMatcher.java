@@ -0,0 +1,109 @@
+package combowidget.engine;
+
+/**
+ * Case-insensitive substring matcher which supports {@code *} as a wildcard.
+ *
+ * <p>
+ * A key matches if it contains the literal segments between the wildcards in
+ * the given order. Each segment is searched with the Boyer-Moore-Horspool
+ * algorithm. It usually skips ahead by the length of the segment and is
+ * sublinear in the length of the key on typical labels. The worst case is
+ * O(key length * segment length). Matching needs no regex engine and no
+ * allocations.
+ * </p>
+ */
+final class GlobMatcher {
+
+    private static final char WILDCARD = '*';
+
+    /*
+     * Horspool bad-char shift tables are indexed by the low byte of a char.
+     * Chars sharing a low byte share the smallest shift of all of them, which
+     * keeps the algorithm correct for the whole char range.
+     */
+    private static final int SHIFT_TABLE_SIZE = 256;
+
+    private final String[] segments;
+    private final int[][] shifts;
+
+    /**
+     * @param foldedPattern The case-folded pattern.
+     */
+    GlobMatcher(String foldedPattern) {
+        this.segments = split(foldedPattern);
+        this.shifts = new int[segments.length][];
+        for (int i = 0; i < segments.length; i++) {
+            shifts[i] = shiftTable(segments[i]);
+        }
+    }
+
+    /**
+     * @return The non-empty literal segments of the given pattern.
+     */
+    static String[] split(String pattern) {
+        String[] parts = pattern.split("\\" + WILDCARD);
+        int count = 0;
+        for (String part : parts) {
+            if (!part.isEmpty()) {
+                parts[count++] = part;
+            }
+        }
+        String[] segments = new String[count];
+        System.arraycopy(parts, 0, segments, 0, count);
+        return segments;
+    }
+
+    private static int[] shiftTable(String segment) {
+        int length = segment.length();
+        int[] table = new int[SHIFT_TABLE_SIZE];
+        for (int i = 0; i < SHIFT_TABLE_SIZE; i++) {
+            table[i] = length;
+        }
+        for (int i = 0; i < length - 1; i++) {
+            table[segment.charAt(i) & (SHIFT_TABLE_SIZE - 1)] = length - 1 - i;
+        }
+        return table;
+    }
+
+    String[] getSegments() {
+        return segments.clone();
+    }
+
+    /**
+     * @param foldedKey The case-folded key.
+     */
+    boolean matches(String foldedKey) {
+        int from = 0;
+        for (int i = 0; i < segments.length; i++) {
+            int index = indexOf(foldedKey, from, segments[i], shifts[i]);
+            if (index < 0) {
+                return false;
+            }
+            from = index + segments[i].length();
+        }
+        return true;
+    }
+
+    private static int indexOf(String text, int from, String segment, int[] shift) {
+        int last = segment.length() - 1;
+        char lastChar = segment.charAt(last);
+        int end = text.length() - last;
+
+        int i = from;
+        while (i < end) {
+            char c = text.charAt(i + last);
+            if (c == lastChar) {
+                int j = last - 1;
+                while (j >= 0 && text.charAt(i + j) == segment.charAt(j)) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += shift[c & (SHIFT_TABLE_SIZE - 1)];
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,98 @@
+package combowidget.engine;
+
+/**
+ * Limits the work a regex query may spend on a single key.
+ *
+ * <p>
+ * {@link java.util.regex.Pattern} uses a backtracking engine. A pathological
+ * expression like {@code (a+)+$} needs exponential time and would freeze the
+ * UI thread. Every char the regex engine reads from a key wrapped by
+ * {@link #wrap(String)} costs one step. Each key may use a fixed number of
+ * steps per char of the key. Once a key has used up its steps a
+ * {@link MatchBudgetExceededException} is thrown and the query has to be
+ * abandoned, an expression which backtracks catastrophically on one key does
+ * so on the others as well.
+ * </p>
+ *
+ * <p>
+ * As the budget is granted per key, the work allowed for a pass grows with
+ * the input. A linear expression completes on inputs of any size.
+ * </p>
+ *
+ * <p>
+ * A budget must only be used by one thread at a time. Threads which evaluate
+ * parts of the same pass in parallel use {@link #fork() forks}.
+ * </p>
+ */
+final class MatchBudget {
+
+    private final long stepsPerChar;
+    private long remainingSteps;
+
+    /**
+     * @param stepsPerChar The number of chars the regex engine may read per
+     *        char of a key.
+     */
+    MatchBudget(long stepsPerChar) {
+        this.stepsPerChar = stepsPerChar;
+    }
+
+    /**
+     * @return A budget with the same limit for another thread.
+     */
+    MatchBudget fork() {
+        return new MatchBudget(stepsPerChar);
+    }
+
+    /**
+     * Grants the steps for the given key. The steps of the previous key are
+     * dropped.
+     */
+    CharSequence wrap(String key) {
+        // one extra char, so that even empty keys can be matched
+        long chars = key.length() + 1L;
+        remainingSteps = stepsPerChar > Long.MAX_VALUE / chars ? Long.MAX_VALUE : stepsPerChar * chars;
+        return new BudgetedCharSequence(key, 0, key.length());
+    }
+
+    private void consume() {
+        if (--remainingSteps < 0) {
+            throw new MatchBudgetExceededException();
+        }
+    }
+
+    private final class BudgetedCharSequence implements CharSequence {
+
+        private final String string;
+        private final int start;
+        private final int end;
+
+        BudgetedCharSequence(String string, int start, int end) {
+            this.string = string;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            consume();
+            return string.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new BudgetedCharSequence(string, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return string.substring(start, end);
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package combowidget.engine;
+
+/**
+ * Thrown if evaluating a query needs more steps than its {@link MatchBudget}
+ * allows.
+ */
+final class MatchBudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    MatchBudgetExceededException() {
+        // thrown to abandon a query, a stack trace is of no use
+        super("Match budget exceeded", null, false, false);
+    }
+
+}
@@ -0,0 +1,80 @@
+package combowidget.engine;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Compiles the text a user typed into a {@link CompiledQuery}. The
+ * {@link SearchEngine} evaluates the compiled query against every element (or
+ * against the candidates an index leaves over), so a strategy only decides
+ * what a match is, not how the input is scanned.
+ *
+ * <p>
+ * Besides the built-in strategies any matching logic can be plugged in with
+ * {@link #custom(Function)}:
+ * </p>
+ *
+ * <pre>
+ * MatchStrategy initials = MatchStrategy.custom(text -&gt; key -&gt; initialsOf(key).startsWith(text));
+ * FilterResult result = engine.search(initials, "bc");
+ * </pre>
+ */
+@FunctionalInterface
+public interface MatchStrategy {
+
+    /**
+     * Case-insensitive prefix match.
+     */
+    MatchStrategy PREFIX = CompiledQuery::prefix;
+
+    /**
+     * Case-insensitive substring match, {@code *} can be used as a wildcard.
+     */
+    MatchStrategy SUBSTRING = CompiledQuery::substring;
+
+    /**
+     * Case-sensitive match of the whole key against a regular expression.
+     */
+    MatchStrategy REGEX = CompiledQuery::regex;
+
+    /**
+     * Exact ({@code 1750}) or range ({@code 1200..1300}) lookup of numeric
+     * keys, see {@link SearchEngine#setNumericKeyExtractor(Function)}.
+     */
+    MatchStrategy NUMERIC = CompiledQuery::numeric;
+
+    /**
+     * @param text The query, e.g. the key sequence without escape chars.
+     * @return The compiled query. An invalid query is reported by
+     *         {@link CompiledQuery#isValid()} instead of an exception.
+     */
+    CompiledQuery compile(String text);
+
+    /**
+     * Case-insensitive fuzzy (subsequence) match. Only the best matches are
+     * kept, ordered by relevance.
+     *
+     * @param resultLimit The maximum number of matches to keep.
+     */
+    static MatchStrategy fuzzy(int resultLimit) {
+        return text -> CompiledQuery.fuzzy(text, resultLimit);
+    }
+
+    /**
+     * @param compiler Called once per query with the query text. Returns the
+     *        predicate which is then tested against the search key (not
+     *        case-folded) of every element. May throw an
+     *        {@link IllegalArgumentException} to reject an invalid query, its
+     *        message becomes the query's error message.
+     */
+    static MatchStrategy custom(Function<String, Predicate<String>> compiler) {
+        return text -> {
+            try {
+                return CompiledQuery.custom(text, compiler.apply(text));
+            } catch (IllegalArgumentException e) {
+                return CompiledQuery.invalidCustom(text, e.getMessage());
+            }
+        };
+    }
+
+}
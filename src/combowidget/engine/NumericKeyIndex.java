@@ -0,0 +1,134 @@
+package combowidget.engine;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Function;
+
+/**
+ * Sorted index over the numeric keys (e.g. article or account codes) of the
+ * searched elements. Exact and range lookups are answered by binary search, no
+ * key or label has to be scanned.
+ *
+ * <p>
+ * The key of an element is parsed from the leading digits of its key text,
+ * e.g. {@code 1750} from {@code "1750 - breeze"}. Elements whose key text does
+ * not start with a digit or whose key does not fit into a long are not
+ * indexed.
+ * </p>
+ */
+final class NumericKeyIndex {
+
+    /*
+     * More digits may not fit into a long.
+     */
+    private static final int MAX_DIGITS = 18;
+
+    private final long[] keys;
+    private final int[] positions;
+
+    private NumericKeyIndex(long[] keys, int[] positions) {
+        this.keys = keys;
+        this.positions = positions;
+    }
+
+    /**
+     * @param keyText Returns the text the key of an element is parsed from.
+     */
+    static NumericKeyIndex build(SearchSnapshot snapshot, Function<Object, CharSequence> keyText) {
+
+        long[] parsed = new long[snapshot.size()];
+        Integer[] order = new Integer[snapshot.size()];
+        int count = 0;
+
+        for (int position = 0; position < snapshot.size(); position++) {
+            long key = parse(keyText.apply(snapshot.getElement(position)));
+            if (key >= 0) {
+                parsed[position] = key;
+                order[count++] = position;
+            }
+        }
+
+        // stable sort: equal keys stay in snapshot order
+        Arrays.sort(order, 0, count, Comparator.comparingLong((Integer i) -> parsed[i]));
+
+        long[] keys = new long[count];
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = parsed[order[i]];
+            positions[i] = order[i];
+        }
+
+        return new NumericKeyIndex(keys, positions);
+    }
+
+    /**
+     * @return The number formed by the leading ASCII digits (leading
+     *         whitespace is skipped) or {@code -1} if there is none or if it
+     *         has more than {@value #MAX_DIGITS} digits.
+     */
+    static long parse(CharSequence text) {
+        if (text == null) {
+            return -1;
+        }
+        int i = 0;
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        long key = -1;
+        int digits = 0;
+        while (i < text.length() && isDigit(text.charAt(i))) {
+            // truncated keys would collide
+            if (++digits > MAX_DIGITS) {
+                return -1;
+            }
+            key = (key < 0 ? 0 : key * 10) + (text.charAt(i) - '0');
+            i++;
+        }
+        return key;
+    }
+
+    /**
+     * @return {@code true} for the ASCII digits, other Unicode digits do not
+     *         form keys.
+     */
+    static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return Ascending snapshot positions of all elements whose key is
+     *         within [from, to].
+     */
+    int[] range(long from, long to) {
+        if (from > to) {
+            return new int[0];
+        }
+        int start = lowerBound(from);
+        int end = to == Long.MAX_VALUE ? keys.length : lowerBound(to + 1);
+        int[] result = Arrays.copyOfRange(positions, start, Math.max(start, end));
+        Arrays.sort(result);
+        return result;
+    }
+
+    /*
+     * Index of the first key which is >= key.
+     */
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
@@ -0,0 +1,157 @@
+package combowidget.engine;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Case-insensitive prefix index over the items of a combo.
+ *
+ * <p>
+ * Holds the case-folded item labels sorted in natural {@link String} order
+ * together with the combo index of each label. The combo itself is sorted by
+ * the viewer's comparator, which does not necessarily order the labels the
+ * same way, so the first match in combo order is the match with the smallest
+ * combo index within the range of labels which start with the prefix. That
+ * minimum is looked up in a segment tree over the combo indices, so a short
+ * prefix does not scan its whole range.
+ * </p>
+ */
+public final class PrefixIndex {
+
+    private final String[] keys;
+    private final int[] comboIndices;
+
+    /*
+     * True if the sorted keys are in combo order as well. The first key of a
+     * prefix range is the first match in combo order then.
+     */
+    private final boolean comboOrdered;
+
+    /*
+     * Segment tree of range minimums over comboIndices: the leaves are at
+     * [n, 2n), node i holds the minimum of nodes 2i and 2i + 1. Null if the
+     * keys are combo ordered.
+     */
+    private final int[] minimums;
+
+    private PrefixIndex(String[] keys, int[] comboIndices) {
+        this.keys = keys;
+        this.comboIndices = comboIndices;
+
+        boolean ordered = true;
+        for (int i = 1; i < comboIndices.length && ordered; i++) {
+            ordered = comboIndices[i - 1] < comboIndices[i];
+        }
+        this.comboOrdered = ordered;
+        this.minimums = ordered ? null : buildMinimums(comboIndices);
+    }
+
+    private static int[] buildMinimums(int[] values) {
+        int n = values.length;
+        int[] tree = new int[2 * n];
+        System.arraycopy(values, 0, tree, n, n);
+        for (int i = n - 1; i > 0; i--) {
+            tree[i] = Math.min(tree[2 * i], tree[2 * i + 1]);
+        }
+        return tree;
+    }
+
+    /**
+     * @param folded The case-folded item labels in combo order.
+     */
+    static PrefixIndex build(final String[] folded) {
+
+        Integer[] order = new Integer[folded.length];
+        for (int i = 0; i < folded.length; i++) {
+            order[i] = i;
+        }
+
+        // stable sort: equal keys stay in combo order
+        Arrays.sort(order, Comparator.comparing((Integer i) -> folded[i]));
+
+        String[] keys = new String[folded.length];
+        int[] comboIndices = new int[folded.length];
+        for (int i = 0; i < order.length; i++) {
+            keys[i] = folded[order[i]];
+            comboIndices[i] = order[i];
+        }
+
+        return new PrefixIndex(keys, comboIndices);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @param prefix The case-folded prefix.
+     * @return The combo index of the first item (in combo order) whose label
+     *         starts with the given prefix or {@code -1} if there is none.
+     */
+    public int firstMatch(String prefix) {
+
+        int from = lowerBound(prefix);
+        if (from == keys.length || !keys[from].startsWith(prefix)) {
+            return -1;
+        }
+
+        if (comboOrdered) {
+            return comboIndices[from];
+        }
+
+        return minimum(from, endOfPrefixRange(prefix, from));
+    }
+
+    /*
+     * Smallest combo index in [from, to), in O(log n).
+     */
+    private int minimum(int from, int to) {
+        int n = comboIndices.length;
+        int min = Integer.MAX_VALUE;
+        for (int low = from + n, high = to + n; low < high; low >>>= 1, high >>>= 1) {
+            if ((low & 1) == 1) {
+                min = Math.min(min, minimums[low++]);
+            }
+            if ((high & 1) == 1) {
+                min = Math.min(min, minimums[--high]);
+            }
+        }
+        return min;
+    }
+
+    /*
+     * Index of the first key which is >= prefix.
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /*
+     * Keys starting with the prefix form a contiguous range beginning at
+     * from. Returns the exclusive end of that range.
+     */
+    private int endOfPrefixRange(String prefix, int from) {
+        int low = from;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
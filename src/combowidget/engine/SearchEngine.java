@@ -0,0 +1,454 @@
+package combowidget.engine;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Headless search engine: matches queries against a plain array of elements
+ * and returns the positions of the matching elements. It touches no widget and
+ * needs no {@code Display}, so it can be profiled and reused on its own, e.g.
+ * to validate input on a server with the same rules a combo applies.
+ *
+ * <p>
+ * The engine caches the search key of each element (computed once by the key
+ * function) and builds a {@link SearchIndex} over the elements on the first
+ * search: the snapshot of elements and keys, a trigram index for substring
+ * and prefix queries on big inputs, one per search field, and the numeric key
+ * index. The index is dropped as soon as the elements or keys change. Engines
+ * bound to the same elements can share one index instead, see
+ * {@link #setIndex(SearchIndex)}. What a match is, is decided by a
+ * {@link MatchStrategy}.
+ * </p>
+ *
+ * <p>
+ * An engine is not thread-safe. It has to be used by a single thread (for a
+ * viewer the UI thread, key functions may call label providers). Only the
+ * evaluations returned by {@link #prepare(CompiledQuery, int)} may run on
+ * other threads.
+ * </p>
+ *
+ * @param <T> The type of the searched elements.
+ */
+public final class SearchEngine<T> {
+
+    private static final Logger LOGGER = Logger.getLogger(SearchEngine.class.getName());
+
+    public static final int DEFAULT_TRIGRAM_INDEX_THRESHOLD = 10000;
+
+    public static final long DEFAULT_REGEX_STEPS_PER_CHAR = 1000L;
+
+    public static final int DEFAULT_PARALLEL_MATCHING_THRESHOLD = 50000;
+
+    private static final int[] NO_MATCHES = new int[0];
+
+    private final SearchKeyCache keys;
+
+    /*
+     * The searched elements in the order the matches are reported in and the
+     * index over them. The index is built on the first search unless a
+     * (shared) index was set, elements is null then.
+     */
+    private Object[] elements;
+    private SearchIndex index;
+
+    /*
+     * Inputs with at least this many elements get a trigram index.
+     */
+    private int trigramIndexThreshold = DEFAULT_TRIGRAM_INDEX_THRESHOLD;
+
+    private long regexStepsPerChar = DEFAULT_REGEX_STEPS_PER_CHAR;
+
+    private int parallelMatchingThreshold = DEFAULT_PARALLEL_MATCHING_THRESHOLD;
+
+    /*
+     * Numeric key lookups. Only available if an extractor is set.
+     */
+    private Function<? super T, ? extends CharSequence> numericKeyExtractor;
+
+    /*
+     * Named search fields by lower case name.
+     */
+    private final Map<String, SearchField> searchFields = new LinkedHashMap<>();
+
+    /*
+     * Last complete substring or prefix result. A query which refines its
+     * query only tests its matches instead of the whole input.
+     */
+    private FilterResult lastResult;
+
+    /**
+     * @param keyFunction Computes the text an element is matched against,
+     *        e.g. its label. Called at most once per element until the keys
+     *        are invalidated.
+     */
+    public SearchEngine(Function<? super T, ? extends CharSequence> keyFunction) {
+        this.keys = new SearchKeyCache(element -> keyText(keyFunction, element));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> String keyText(Function<? super T, ? extends CharSequence> function, Object element) {
+        CharSequence key = function.apply((T) element);
+        return key == null ? null : key.toString();
+    }
+
+    /**
+     * @param elements The elements to search, in the order the matches are
+     *        reported in. The array must not be modified afterwards.
+     *        {@code null} drops the elements until the next call.
+     */
+    public void setElements(Object[] elements) {
+        this.elements = elements;
+        dropIndex();
+    }
+
+    /**
+     * Searches the elements of the given index, e.g. an index shared by all
+     * engines bound to the same input. The index must have been created by an
+     * engine with the same key function, search fields and numeric key
+     * extractor.
+     *
+     * @param sharedIndex {@code null} drops the elements until the next call.
+     */
+    public void setIndex(SearchIndex sharedIndex) {
+        this.elements = null;
+        dropIndex();
+        this.index = sharedIndex;
+    }
+
+    public boolean hasElements() {
+        return elements != null || index != null;
+    }
+
+    /**
+     * @return The number of searched elements.
+     */
+    public int size() {
+        if (index != null) {
+            return index.size();
+        }
+        return elements == null ? 0 : elements.length;
+    }
+
+    /**
+     * @return The index over the current elements. Built on the first call
+     *         after the elements or keys have changed.
+     * @throws IllegalStateException If no elements are set.
+     */
+    public SearchIndex getIndex() {
+        if (index == null) {
+            if (elements == null) {
+                throw new IllegalStateException("No elements set");
+            }
+            index = createIndex(elements);
+        }
+        return index;
+    }
+
+    /**
+     * Creates an index over the given elements without searching them. Calls
+     * the key functions for every element which is not cached yet, so it has
+     * to be called by the thread which owns the engine.
+     *
+     * @param indexedElements The elements in the order matches are reported
+     *        in. The array must not be modified afterwards.
+     */
+    public SearchIndex createIndex(Object[] indexedElements) {
+
+        SearchKey[] elementKeys = new SearchKey[indexedElements.length];
+        for (int i = 0; i < indexedElements.length; i++) {
+            elementKeys[i] = keys.get(indexedElements[i]);
+        }
+        SearchSnapshot snapshot = new SearchSnapshot(indexedElements, elementKeys);
+
+        Map<String, SearchSnapshot> fieldSnapshots = new HashMap<>();
+        for (Map.Entry<String, SearchField> field : searchFields.entrySet()) {
+            fieldSnapshots.put(field.getKey(), field.getValue().createSnapshot(snapshot));
+        }
+
+        NumericKeyIndex numericKeyIndex = null;
+        if (numericKeyExtractor != null) {
+            numericKeyIndex = NumericKeyIndex.build(snapshot, element -> keyText(numericKeyExtractor, element));
+        }
+
+        LOGGER.finer(() -> "Built search index over " + snapshot.size() + " elements.");
+        return new SearchIndex(snapshot, fieldSnapshots, numericKeyIndex, trigramIndexThreshold);
+    }
+
+    /**
+     * Recomputes the keys of all elements on the next search. Call after the
+     * key function returns other keys, e.g. because labels have changed.
+     */
+    public void invalidateKeys() {
+        keys.invalidate();
+        for (SearchField field : searchFields.values()) {
+            field.invalidate();
+        }
+        dropIndex();
+    }
+
+    /**
+     * Recomputes the keys of the given elements on the next search.
+     */
+    public void invalidateKeys(Object[] changedElements) {
+        keys.invalidate(changedElements);
+        for (SearchField field : searchFields.values()) {
+            field.invalidate(changedElements);
+        }
+        dropIndex();
+    }
+
+    /*
+     * An index over the elements is rebuilt on the next search. A shared
+     * index is gone until the next one is set.
+     */
+    private void dropIndex() {
+        lastResult = null;
+        index = null;
+    }
+
+    /**
+     * Inputs with at least this number of elements get a trigram index which
+     * speeds up substring and prefix queries. Defaults to
+     * {@value #DEFAULT_TRIGRAM_INDEX_THRESHOLD}.
+     *
+     * @param threshold Use {@link Integer#MAX_VALUE} to disable the index.
+     */
+    public void setTrigramIndexThreshold(int threshold) {
+        this.trigramIndexThreshold = threshold;
+        dropIndex();
+    }
+
+    public int getTrigramIndexThreshold() {
+        return trigramIndexThreshold;
+    }
+
+    /**
+     * Limits the number of chars the regex engine may read per char of a key
+     * while evaluating a regex query, see {@link MatchBudget}. Defaults to
+     * {@value #DEFAULT_REGEX_STEPS_PER_CHAR}.
+     *
+     * @param steps Use {@link Long#MAX_VALUE} to disable the limit.
+     */
+    public void setRegexStepsPerChar(long steps) {
+        this.regexStepsPerChar = steps;
+    }
+
+    public long getRegexStepsPerChar() {
+        return regexStepsPerChar;
+    }
+
+    /**
+     * Queries which have to test at least this number of elements are
+     * evaluated in parallel on all cores. Defaults to
+     * {@value #DEFAULT_PARALLEL_MATCHING_THRESHOLD}.
+     *
+     * @param threshold Use {@link Integer#MAX_VALUE} to always evaluate on a
+     *        single thread.
+     */
+    public void setParallelMatchingThreshold(int threshold) {
+        this.parallelMatchingThreshold = threshold;
+    }
+
+    public int getParallelMatchingThreshold() {
+        return parallelMatchingThreshold;
+    }
+
+    /**
+     * Registers a named search field. Substring queries on the field (see
+     * {@link CompiledQuery#substring(String, String)}) only match against
+     * the field's keys, which are cached and indexed separately.
+     *
+     * @param name Letters and digits only. Case-insensitive.
+     * @param extractor Computes the field's search text of an element.
+     */
+    public void addSearchField(String name, Function<? super T, ? extends CharSequence> extractor) {
+        if (name == null || name.isEmpty() || !name.chars().allMatch(Character::isLetterOrDigit)) {
+            throw new IllegalArgumentException("Invalid search field name: >" + name + "<");
+        }
+        searchFields.put(name.toLowerCase(), new SearchField(name, element -> keyText(extractor, element)));
+        dropIndex();
+    }
+
+    /**
+     * @return {@code true} if the field was registered.
+     */
+    public boolean removeSearchField(String name) {
+        if (searchFields.remove(name.toLowerCase()) == null) {
+            return false;
+        }
+        dropIndex();
+        return true;
+    }
+
+    public boolean hasSearchField(String name) {
+        return searchFields.containsKey(name.toLowerCase());
+    }
+
+    /**
+     * Enables numeric queries (see {@link MatchStrategy#NUMERIC}). The codes
+     * are parsed into a sorted index and looked up by binary search.
+     *
+     * @param extractor Returns the text the code of an element is parsed from
+     *        (its leading digits). {@code null} disables numeric queries.
+     */
+    public void setNumericKeyExtractor(Function<? super T, ? extends CharSequence> extractor) {
+        this.numericKeyExtractor = extractor;
+        dropIndex();
+    }
+
+    public Function<? super T, ? extends CharSequence> getNumericKeyExtractor() {
+        return numericKeyExtractor;
+    }
+
+    /**
+     * Builds the indexes right away instead of on the first search which
+     * needs them, e.g. as soon as a viewer's input is set. Does nothing while
+     * no elements are set.
+     */
+    public void buildIndexes() {
+        if (hasElements()) {
+            getIndex().buildIndexes();
+        }
+    }
+
+    /**
+     * Evaluates a query completely on the calling thread.
+     */
+    public FilterResult search(MatchStrategy strategy, String text) {
+        return search(strategy.compile(text));
+    }
+
+    /**
+     * Evaluates a query completely on the calling thread.
+     */
+    public FilterResult search(CompiledQuery query) {
+        FilterResult result = prepare(query, Integer.MAX_VALUE).apply(() -> false);
+        remember(result);
+        return result;
+    }
+
+    /**
+     * Prepares the evaluation of a query: takes the current snapshot and
+     * narrows down the elements to test, either to the matches of the last
+     * remembered result (if the query refines its query) or with an index.
+     *
+     * @param matchLimit See
+     *        {@link FilterResult#resume(int, long, int, BooleanSupplier)}.
+     * @return The evaluation. May be called on any thread with a cancellation
+     *         flag, see {@link FilterResult}.
+     * @throws IllegalArgumentException If the query refers to an unknown
+     *         search field.
+     * @throws IllegalStateException If no elements are set or if a numeric
+     *         query is prepared but no numeric key extractor is set.
+     */
+    public Function<BooleanSupplier, FilterResult> prepare(CompiledQuery query, int matchLimit) {
+
+        final SearchIndex searchIndex = getIndex();
+
+        if (query.getMode() == CompiledQuery.Mode.NUMERIC) {
+            final NumericKeyIndex numericKeyIndex = searchIndex.getNumericKeyIndex();
+            if (numericKeyIndex == null) {
+                throw new IllegalStateException("Numeric queries need a numeric key extractor");
+            }
+            return cancelled -> FilterResult.of(query, searchIndex.getSnapshot(), query.isValid()
+                    ? numericKeyIndex.range(query.getRangeFrom(), query.getRangeTo()) : NO_MATCHES);
+        }
+
+        final SearchSnapshot searchSnapshot = getSnapshot(searchIndex, query);
+        final int[] candidates = getCandidates(searchIndex, query, searchSnapshot);
+        final long stepsPerChar = regexStepsPerChar;
+        final int parallelThreshold = parallelMatchingThreshold;
+
+        return cancelled -> FilterResult.evaluate(query, searchSnapshot, candidates, stepsPerChar, parallelThreshold,
+                matchLimit, cancelled);
+    }
+
+    /**
+     * Lets the next query which refines the query of the given result (e.g.
+     * because chars were appended) test the matches of the result only
+     * instead of the whole input. Only complete substring and prefix results
+     * are kept, any other result just forgets the last one.
+     */
+    public void remember(FilterResult result) {
+        CompiledQuery.Mode mode = result.getQuery().getMode();
+        boolean refinable = mode == CompiledQuery.Mode.SUBSTRING || mode == CompiledQuery.Mode.PREFIX;
+        lastResult = refinable && result.isComplete() && isCurrent(result) ? result : null;
+    }
+
+    public void forgetLastQuery() {
+        lastResult = null;
+    }
+
+    /**
+     * @return {@code true} if the result was found in the current elements,
+     *         i.e. they have not been replaced or invalidated since.
+     */
+    public boolean isCurrent(FilterResult result) {
+        return index != null && result.getSnapshot().hasSameElements(index.getSnapshot());
+    }
+
+    /**
+     * @param items E.g. the items of a combo in display order.
+     * @return A type-ahead index over the keys of the given items. If the
+     *         items are the searched elements in search order the index is
+     *         built only once per {@link SearchIndex}.
+     */
+    public PrefixIndex createPrefixIndex(Object[] items) {
+        if (index != null && index.hasElements(items)) {
+            return index.getPrefixIndex();
+        }
+        String[] folded = new String[items.length];
+        for (int i = 0; i < items.length; i++) {
+            folded[i] = keys.get(items[i]).folded;
+        }
+        PrefixIndex index = PrefixIndex.build(folded);
+        LOGGER.finer(() -> "Built type-ahead index over " + index.size() + " items.");
+        return index;
+    }
+
+    /*
+     * Narrows down the elements which have to be tested against the query.
+     *
+     * Returns null if the whole input has to be tested.
+     */
+    private int[] getCandidates(SearchIndex searchIndex, CompiledQuery query, SearchSnapshot searchSnapshot) {
+
+        if (lastResult != null && query.refines(lastResult.getQuery())
+                && lastResult.getSnapshot() == searchSnapshot) {
+            LOGGER.finer(() -> "Query refines previous query. Narrowing down previous result set of "
+                    + lastResult.getMatchCount() + " elements.");
+            return lastResult.getMatches();
+        }
+
+        TrigramIndex trigramIndex = query.getField() == null ? searchIndex.getTrigramIndex()
+                : searchIndex.getTrigramIndex(query.getField().toLowerCase());
+        if (trigramIndex != null) {
+            int[] candidates = trigramIndex.candidates(query.literalSegments());
+            if (candidates != null) {
+                LOGGER.finer(() -> "Trigram index narrowed down input to " + candidates.length + " of "
+                        + trigramIndex.size() + " candidates.");
+            }
+            return candidates;
+        }
+        return null;
+    }
+
+    /*
+     * The snapshot of the searched field or the engine's snapshot.
+     */
+    private static SearchSnapshot getSnapshot(SearchIndex searchIndex, CompiledQuery query) {
+        if (query.getField() == null) {
+            return searchIndex.getSnapshot();
+        }
+        SearchSnapshot fieldSnapshot = searchIndex.getFieldSnapshot(query.getField().toLowerCase());
+        if (fieldSnapshot == null) {
+            throw new IllegalArgumentException("Unknown search field: >" + query.getField() + "<");
+        }
+        return fieldSnapshot;
+    }
+
+}
@@ -0,0 +1,42 @@
+package combowidget.engine;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs search tasks off the UI thread. Shared by all viewers.
+ *
+ * <p>
+ * Uses a virtual thread per task if the JRE supports virtual threads and falls
+ * back to a cached pool of daemon threads otherwise.
+ * </p>
+ */
+public final class SearchExecutor {
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private SearchExecutor() {
+    }
+
+    public static void execute(Runnable task) {
+        EXECUTOR.execute(task);
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            // Java 21+, looked up reflectively because we compile against 1.8
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "combo-search-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+}
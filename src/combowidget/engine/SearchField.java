@@ -0,0 +1,53 @@
+package combowidget.engine;
+
+import java.util.function.Function;
+
+/**
+ * A named search field, e.g. the code or the supplier of an element. Queries
+ * like {@code code:17*} only match against the keys of the field, which are
+ * cached and indexed separately from the label.
+ *
+ * <p>
+ * A field snapshot contains the elements of the engine's snapshot in the same
+ * order, so positions of both snapshots are interchangeable. It is part of
+ * the {@link SearchIndex} built over the engine's snapshot.
+ * </p>
+ */
+final class SearchField {
+
+    private final String name;
+    private final SearchKeyCache keys;
+
+    /**
+     * @param keyFunction Computes the field's search text of an element.
+     */
+    SearchField(String name, Function<Object, String> keyFunction) {
+        this.name = name;
+        this.keys = new SearchKeyCache(keyFunction);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @param engineSnapshot The engine's snapshot.
+     * @return The same elements with the field keys.
+     */
+    SearchSnapshot createSnapshot(SearchSnapshot engineSnapshot) {
+        SearchKey[] fieldKeys = new SearchKey[engineSnapshot.size()];
+        for (int i = 0; i < fieldKeys.length; i++) {
+            fieldKeys[i] = keys.get(engineSnapshot.getElement(i));
+        }
+        return engineSnapshot.withKeys(fieldKeys);
+    }
+
+    void invalidate() {
+        keys.invalidate();
+    }
+
+    void invalidate(Object[] elements) {
+        keys.invalidate(elements);
+    }
+
+}
@@ -0,0 +1,138 @@
+package combowidget.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable search index over a fixed array of elements: the search key of
+ * each element, the keys of each search field and the indexes built over
+ * them.
+ *
+ * <p>
+ * An index is created by {@link SearchEngine#createIndex(Object[])} on the
+ * thread which owns the engine. All key functions (e.g. label providers) are
+ * called then. Afterwards the index can be used by any number of engines on
+ * any thread, e.g. by all combos bound to the same list of countries, see
+ * {@link SearchIndexRegistry}. The trigram and prefix indexes are built from
+ * the keys on first use.
+ * </p>
+ */
+public final class SearchIndex {
+
+    private final SearchSnapshot snapshot;
+
+    /*
+     * Field snapshots by lower case field name.
+     */
+    private final Map<String, SearchSnapshot> fieldSnapshots;
+
+    /*
+     * Null if no numeric key extractor was set.
+     */
+    private final NumericKeyIndex numericKeyIndex;
+
+    private final int trigramIndexThreshold;
+
+    /*
+     * Built on first use, guarded by this.
+     */
+    private TrigramIndex trigramIndex;
+    private final Map<String, TrigramIndex> fieldTrigramIndexes = new HashMap<>();
+    private PrefixIndex prefixIndex;
+
+    SearchIndex(SearchSnapshot snapshot, Map<String, SearchSnapshot> fieldSnapshots,
+            NumericKeyIndex numericKeyIndex, int trigramIndexThreshold) {
+        this.snapshot = snapshot;
+        this.fieldSnapshots = fieldSnapshots;
+        this.numericKeyIndex = numericKeyIndex;
+        this.trigramIndexThreshold = trigramIndexThreshold;
+    }
+
+    /**
+     * @return The number of indexed elements.
+     */
+    public int size() {
+        return snapshot.size();
+    }
+
+    SearchSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @param field The lower case field name.
+     * @return {@code null} if the field was not registered when the index
+     *         was created.
+     */
+    SearchSnapshot getFieldSnapshot(String field) {
+        return fieldSnapshots.get(field);
+    }
+
+    NumericKeyIndex getNumericKeyIndex() {
+        return numericKeyIndex;
+    }
+
+    /**
+     * @return {@code null} if there are less elements than the trigram index
+     *         threshold.
+     */
+    synchronized TrigramIndex getTrigramIndex() {
+        if (trigramIndex == null && snapshot.size() >= trigramIndexThreshold) {
+            trigramIndex = TrigramIndex.build(snapshot);
+        }
+        return trigramIndex;
+    }
+
+    /**
+     * @param field The lower case name of a registered field.
+     */
+    synchronized TrigramIndex getTrigramIndex(String field) {
+        TrigramIndex index = fieldTrigramIndexes.get(field);
+        if (index == null && snapshot.size() >= trigramIndexThreshold) {
+            index = TrigramIndex.build(fieldSnapshots.get(field));
+            fieldTrigramIndexes.put(field, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return A type-ahead index over the elements in index order.
+     */
+    synchronized PrefixIndex getPrefixIndex() {
+        if (prefixIndex == null) {
+            String[] folded = new String[snapshot.size()];
+            for (int i = 0; i < folded.length; i++) {
+                folded[i] = snapshot.getKey(i).folded;
+            }
+            prefixIndex = PrefixIndex.build(folded);
+        }
+        return prefixIndex;
+    }
+
+    /**
+     * @return {@code true} if the given items are the indexed elements in
+     *         index order.
+     */
+    boolean hasElements(Object[] items) {
+        if (items.length != snapshot.size()) {
+            return false;
+        }
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] != snapshot.getElement(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the trigram indexes right away instead of on first use.
+     */
+    void buildIndexes() {
+        getTrigramIndex();
+        for (String field : fieldSnapshots.keySet()) {
+            getTrigramIndex(field);
+        }
+    }
+
+}
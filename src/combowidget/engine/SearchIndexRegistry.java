@@ -0,0 +1,145 @@
+package combowidget.engine;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Application-wide registry of {@link SearchIndex}es, so that all engines
+ * (and combos) bound to the same input share one index instead of computing
+ * the same keys and indexes over and over again. E.g. dozens of currency
+ * combos in a form, or thousands of them across the sessions of a multi-user
+ * application, share a single index of the currency list.
+ *
+ * <p>
+ * Indexes are registered by the identity of the input (e.g. the list the
+ * combos are bound to) and a version which has to change whenever the
+ * content of the input changes. The registry holds the inputs weakly, an
+ * index is released as soon as its input is no longer referenced.
+ * </p>
+ *
+ * <p>
+ * The registry is thread-safe.
+ * </p>
+ */
+public final class SearchIndexRegistry {
+
+    private static final SearchIndexRegistry DEFAULT = new SearchIndexRegistry();
+
+    private final Map<InputKey, Entry> entries = new HashMap<>();
+    private final ReferenceQueue<Object> releasedInputs = new ReferenceQueue<>();
+
+    /**
+     * @return The registry shared by the whole application.
+     */
+    public static SearchIndexRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param input The input the index is built over. Compared by identity.
+     * @param version Compared by {@link Object#equals(Object)}. {@code null}
+     *        if the content of the input never changes.
+     * @param indexFactory Builds the index if none is registered for the
+     *        input and version, e.g.
+     *        {@code () -> engine.createIndex(elements)}. Called on the
+     *        calling thread without holding a lock.
+     * @return The registered index or the newly built one, which replaces
+     *         the index of any other version of the input.
+     */
+    public SearchIndex getIndex(Object input, Object version, Supplier<SearchIndex> indexFactory) {
+
+        SearchIndex index = lookup(input, version);
+        if (index != null) {
+            return index;
+        }
+
+        SearchIndex builtIndex = indexFactory.get();
+
+        synchronized (this) {
+            // another thread may have built the same index in the meantime
+            Entry entry = entries.get(new InputKey(input, null));
+            if (entry != null && Objects.equals(entry.version, version)) {
+                return entry.index;
+            }
+            entries.put(new InputKey(input, releasedInputs), new Entry(version, builtIndex));
+        }
+        return builtIndex;
+    }
+
+    private synchronized SearchIndex lookup(Object input, Object version) {
+        expungeReleasedInputs();
+        Entry entry = entries.get(new InputKey(input, null));
+        return entry != null && Objects.equals(entry.version, version) ? entry.index : null;
+    }
+
+    /**
+     * Drops the index of the given input, e.g. because its content has
+     * changed. Engines keep using the index they already have.
+     */
+    public synchronized void remove(Object input) {
+        entries.remove(new InputKey(input, null));
+    }
+
+    /**
+     * @return The number of registered indexes.
+     */
+    public synchronized int size() {
+        expungeReleasedInputs();
+        return entries.size();
+    }
+
+    private void expungeReleasedInputs() {
+        Reference<?> released;
+        while ((released = releasedInputs.poll()) != null) {
+            entries.remove(released);
+        }
+    }
+
+    private static final class Entry {
+
+        private final Object version;
+        private final SearchIndex index;
+
+        Entry(Object version, SearchIndex index) {
+            this.version = version;
+            this.index = index;
+        }
+    }
+
+    /*
+     * Weak reference to an input which is equal to any other key referring
+     * to the same input. A released key is only equal to itself.
+     */
+    private static final class InputKey extends WeakReference<Object> {
+
+        private final int hash;
+
+        InputKey(Object input, ReferenceQueue<Object> queue) {
+            super(input, queue);
+            this.hash = System.identityHashCode(input);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof InputKey)) {
+                return false;
+            }
+            Object input = get();
+            return input != null && input == ((InputKey) other).get();
+        }
+    }
+
+}
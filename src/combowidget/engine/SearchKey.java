@@ -0,0 +1,18 @@
+package combowidget.engine;
+
+/**
+ * The search text of an element (its label unless a search key extractor is
+ * set) together with its case-folded form. Computed once per element by the
+ * {@link SearchKeyCache}.
+ */
+final class SearchKey {
+
+    final String label;
+    final String folded;
+
+    SearchKey(String label) {
+        this.label = label == null ? "" : label;
+        this.folded = this.label.toLowerCase();
+    }
+
+}
@@ -0,0 +1,49 @@
+package combowidget.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Caches the {@link SearchKey} of each element so that the (possibly
+ * expensive) label provider or search key extractor is asked at most once
+ * per element instead of once per element per filter pass.
+ *
+ * <p>
+ * The owner is responsible for invalidating the cache whenever the input or
+ * the labels change.
+ * </p>
+ */
+final class SearchKeyCache {
+
+    private final Function<Object, String> labelFunction;
+    private final Map<Object, SearchKey> keys = new HashMap<>();
+
+    /**
+     * @param labelFunction Computes the search text of an element. Only called
+     *        on a cache miss.
+     */
+    SearchKeyCache(Function<Object, String> labelFunction) {
+        this.labelFunction = labelFunction;
+    }
+
+    SearchKey get(Object element) {
+        SearchKey key = keys.get(element);
+        if (key == null) {
+            key = new SearchKey(labelFunction.apply(element));
+            keys.put(element, key);
+        }
+        return key;
+    }
+
+    void invalidate() {
+        keys.clear();
+    }
+
+    void invalidate(Object[] elements) {
+        for (Object element : elements) {
+            keys.remove(element);
+        }
+    }
+
+}
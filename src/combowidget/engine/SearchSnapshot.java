@@ -0,0 +1,51 @@
+package combowidget.engine;
+
+/**
+ * Immutable snapshot of the searched elements together with the search key of
+ * each element. Elements are addressed by their position in the snapshot.
+ *
+ * <p>
+ * A snapshot is created by the thread which owns the {@link SearchEngine}
+ * (for a viewer the UI thread, label providers must not be called from any
+ * other thread) and can be searched from any thread afterwards.
+ * </p>
+ */
+final class SearchSnapshot {
+
+    private final Object[] elements;
+    private final SearchKey[] keys;
+
+    SearchSnapshot(Object[] elements, SearchKey[] keys) {
+        this.elements = elements;
+        this.keys = keys;
+    }
+
+    int size() {
+        return elements.length;
+    }
+
+    Object getElement(int position) {
+        return elements[position];
+    }
+
+    SearchKey getKey(int position) {
+        return keys[position];
+    }
+
+    /**
+     * @return {@code true} if the other snapshot was derived from the same
+     *         snapshot of the input, see {@link #withKeys(SearchKey[])}.
+     */
+    boolean hasSameElements(SearchSnapshot other) {
+        return other != null && elements == other.elements;
+    }
+
+    /**
+     * @return A snapshot of the same elements (in the same order) with other
+     *         search keys, e.g. the keys of a search field.
+     */
+    SearchSnapshot withKeys(SearchKey[] otherKeys) {
+        return new SearchSnapshot(elements, otherKeys);
+    }
+
+}
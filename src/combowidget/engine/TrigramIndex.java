@@ -0,0 +1,136 @@
+package combowidget.engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted trigram index over the case-folded search keys of the searched
+ * elements.
+ *
+ * <p>
+ * Every trigram (three consecutive chars) of every key is mapped to the
+ * sorted positions of the keys containing it. An element can only match a
+ * substring query if its key contains every trigram of every literal segment
+ * of the query. Intersecting the posting lists of those trigrams therefore
+ * yields a (usually small) candidate set which then has to be verified with
+ * the actual matcher.
+ * </p>
+ */
+final class TrigramIndex {
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final int size;
+    private final Map<Long, int[]> postings;
+
+    private TrigramIndex(int size, Map<Long, int[]> postings) {
+        this.size = size;
+        this.postings = postings;
+    }
+
+    static TrigramIndex build(SearchSnapshot snapshot) {
+
+        Map<Long, PositionList> lists = new HashMap<>();
+
+        for (int position = 0; position < snapshot.size(); position++) {
+            String key = snapshot.getKey(position).folded;
+            for (int i = 0; i + 3 <= key.length(); i++) {
+                Long trigram = trigram(key, i);
+                PositionList list = lists.get(trigram);
+                if (list == null) {
+                    list = new PositionList();
+                    lists.put(trigram, list);
+                }
+                list.add(position);
+            }
+        }
+
+        Map<Long, int[]> postings = new HashMap<>(lists.size() * 4 / 3 + 1);
+        for (Map.Entry<Long, PositionList> entry : lists.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray());
+        }
+
+        return new TrigramIndex(snapshot.size(), postings);
+    }
+
+    private static long trigram(String s, int offset) {
+        return ((long) s.charAt(offset) << 32) | ((long) s.charAt(offset + 1) << 16) | s.charAt(offset + 2);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param segments The case-folded literal segments of a query.
+     * @return Ascending snapshot positions of all elements which contain every
+     *         trigram of every segment or {@code null} if no segment is long
+     *         enough to contain a trigram, i.e. if the index cannot narrow down
+     *         the input.
+     */
+    int[] candidates(List<String> segments) {
+
+        int[] result = null;
+
+        for (String segment : segments) {
+            for (int i = 0; i + 3 <= segment.length(); i++) {
+                int[] positions = postings.get(trigram(segment, i));
+                if (positions == null) {
+                    return NO_POSITIONS;
+                }
+                result = result == null ? positions : intersect(result, positions);
+                if (result.length == 0) {
+                    return NO_POSITIONS;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return count == 0 ? NO_POSITIONS : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Growable list of ascending, distinct positions.
+     */
+    private static final class PositionList {
+
+        private int[] positions = new int[4];
+        private int size;
+
+        void add(int position) {
+            // a key may contain the same trigram more than once
+            if (size > 0 && positions[size - 1] == position) {
+                return;
+            }
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+
+}
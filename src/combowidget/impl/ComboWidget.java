@@ -1,31 +1,125 @@
 package combowidget.impl;
 
-import org.eclipse.jface.viewers.ComboViewer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.eclipse.core.runtime.ListenerList;
+import org.eclipse.jface.viewers.ContentViewer;
+import org.eclipse.jface.viewers.IBaseLabelProvider;
+import org.eclipse.jface.viewers.ILabelProvider;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.ISelectionChangedListener;
+import org.eclipse.jface.viewers.ISelectionProvider;
+import org.eclipse.jface.viewers.IStructuredContentProvider;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.SelectionChangedEvent;
 import org.eclipse.jface.viewers.StructuredSelection;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.FocusAdapter;
+import org.eclipse.swt.events.FocusEvent;
+import org.eclipse.swt.events.MouseAdapter;
+import org.eclipse.swt.events.MouseEvent;
+import org.eclipse.swt.events.PaintEvent;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+
+import combowidget.engine.SearchIndexRegistry;
+
+public class ComboWidget<T> extends Composite implements ISelectionProvider {
+
+    private static final int LABEL_MARGIN = 4;
 
-public class ComboWidget extends Composite {
+    private static final int ARROW_WIDTH = 8;
 
-    private ExtendedComboViewer bpc;
+    private ExtendedComboViewer<T> bpc;
     private Button deleteBtn;
     protected boolean optional;
 
+    private final int comboStyle;
+
+    /*
+     * Lightweight mode: the widget paints the label of the selection itself
+     * and only creates the viewer, the combo and the delete button while it
+     * has the focus. The configurers are applied to each newly created
+     * viewer, the selection is kept here in the meantime.
+     */
+    private final boolean lightweight;
+    private final List<Consumer<? super ExtendedComboViewer<T>>> configurers = new ArrayList<>();
+    private ILabelProvider labelProvider = new LabelProvider();
+    private boolean creatingViewer;
+
+    /*
+     * Input of a lightweight widget. A required widget resolves the first
+     * element in comparator order without a viewer, so it has a selection
+     * before it gains the focus for the first time. The search index is kept
+     * in the registry across activations, the own registry gets a new version
+     * whenever the keys may have changed.
+     */
+    private IStructuredContentProvider contentProvider;
+    private ViewerComparator comparator;
+    private Object input;
+    private SearchIndexRegistry searchIndexRegistry = new SearchIndexRegistry();
+    private Object searchIndexVersion = new Object();
+    private boolean ownSearchIndexRegistry = true;
+
+    /*
+     * Deferred input of a lightweight widget. The input is loaded once and
+     * handed to each newly created viewer, a failed load is started again.
+     */
+    private Supplier<CompletableFuture<?>> deferredInputFactory;
+    private CompletableFuture<?> deferredInput;
+
+    private IStructuredSelection selection = StructuredSelection.EMPTY;
+    private final ListenerList<ISelectionChangedListener> selectionChangedListeners = new ListenerList<>();
+
     /**
      * @param allowEmptySelection If the combo is optional no item is pre-selected and
      *        the user is able to empty the selection.
      *
      */
     public ComboWidget(Composite parent, int style, boolean allowEmptySelection) {
+        this(parent, style, allowEmptySelection, false);
+    }
+
+    /**
+     * @param allowEmptySelection If the combo is optional no item is pre-selected and
+     *        the user is able to empty the selection.
+     * @param lightweight If {@code true} the widget only paints the label of
+     *        the selected element as long as it does not have the focus. The
+     *        combo and the delete button are created when the widget gains the
+     *        focus and disposed again when it loses the focus. The decoration
+     *        and the tooltip are shared by all lightweight combos of a shell.
+     *        Forms with hundreds of combos open faster and use far less OS
+     *        handles. Set the input with {@link #setInput(Object)} and
+     *        configure the viewer with {@link #configureViewer(Consumer)} and
+     *        {@link #setLabelProvider(ILabelProvider)}, the viewer only exists
+     *        while the widget has the focus.
+     */
+    public ComboWidget(Composite parent, int style, boolean allowEmptySelection, boolean lightweight) {
         super(parent, style);
 
         this.optional = allowEmptySelection;
+        this.comboStyle = style;
+        this.lightweight = lightweight;
 
         GridLayout gridLayout = new GridLayout(2, false);
         gridLayout.horizontalSpacing = 0;
@@ -33,9 +127,85 @@ public class ComboWidget extends Composite {
         gridLayout.marginHeight = 0;
         this.setLayout(gridLayout);
 
+        if (lightweight) {
+            addLightweightListeners();
+        } else {
+            createViewer();
+        }
+    }
+
+    private void addLightweightListeners() {
+        addPaintListener(this::paintSelectionLabel);
+
+        // without children the widget takes the focus itself
+        addTraverseListener(e -> {
+            if (e.detail == SWT.TRAVERSE_TAB_NEXT || e.detail == SWT.TRAVERSE_TAB_PREVIOUS) {
+                e.doit = true;
+            }
+        });
+
+        addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusGained(FocusEvent e) {
+                activate();
+            }
+        });
+
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseDown(MouseEvent e) {
+                activate();
+            }
+        });
+
+        addDisposeListener(e -> {
+            labelProvider.dispose();
+            if (contentProvider != null) {
+                contentProvider.dispose();
+            }
+        });
+    }
+
+    /*
+     * Creates the viewer of a lightweight widget and moves the focus to it.
+     */
+    private void activate() {
+        if (bpc == null) {
+            createViewer();
+            getParent().layout(getChildren());
+        }
+        bpc.getControl().setFocus();
+    }
+
+    /*
+     * Disposes the viewer of a lightweight widget as soon as the focus has
+     * left the widget, e.g. not if the user clicked the delete button.
+     */
+    private void scheduleDeactivation() {
+        getDisplay().asyncExec(() -> {
+            if (isDisposed() || bpc == null || bpc.hasFocus()
+                    || deleteBtn != null && deleteBtn.isFocusControl()) {
+                return;
+            }
+            bpc = null;
+            deleteBtn = null;
+            for (Control child : getChildren()) {
+                child.dispose();
+            }
+            getParent().layout(new Control[] { this });
+            redraw();
+        });
+    }
+
+    private void createViewer() {
+
+        IStructuredSelection restoredSelection = selection;
+        creatingViewer = true;
+
         // Combo
 
-        bpc = new ExtendedComboViewer(this, style, allowEmptySelection);
+        ShellDecorations shellDecorations = lightweight ? ShellDecorations.get(getShell()) : null;
+        bpc = new ExtendedComboViewer<>(this, comboStyle, optional, shellDecorations);
 
         GridData gridDataCombo = new GridData();
         gridDataCombo.grabExcessHorizontalSpace = true;
@@ -44,10 +214,76 @@ public class ComboWidget extends Composite {
 
         // Delete button
 
-        if (allowEmptySelection) {
+        if (optional) {
             addDeleteButton();
         }
 
+        bpc.addSelectionChangedListener(this::viewerSelectionChanged);
+
+        if (lightweight) {
+            // the viewer disposes its label and content provider, ours outlive it
+            bpc.setLabelProvider(new LabelProvider() {
+                @Override
+                public String getText(Object element) {
+                    return labelProvider.getText(element);
+                }
+
+                @Override
+                public Image getImage(Object element) {
+                    return labelProvider.getImage(element);
+                }
+            });
+            for (Consumer<? super ExtendedComboViewer<T>> configurer : configurers) {
+                configurer.accept(bpc);
+            }
+            if (contentProvider != null) {
+                bpc.setContentProvider(new IStructuredContentProvider() {
+                    @Override
+                    public Object[] getElements(Object inputElement) {
+                        return contentProvider.getElements(inputElement);
+                    }
+
+                    @Override
+                    public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+                        contentProvider.inputChanged(viewer, oldInput, newInput);
+                    }
+                });
+            }
+            if (comparator != null) {
+                bpc.setComparator(comparator);
+            }
+            // built on the first activation only
+            bpc.setSharedSearchIndex(searchIndexRegistry, searchIndexVersion);
+            if (deferredInputFactory != null && !isDeferredInputLoaded()) {
+                if (deferredInput == null || deferredInput.isCompletedExceptionally()) {
+                    startDeferredInput();
+                }
+                bpc.setDeferredInput(deferredInput);
+            } else if (input != null) {
+                bpc.setInput(input);
+            }
+            if (!restoredSelection.isEmpty()) {
+                bpc.setSelection(restoredSelection);
+            }
+
+            FocusAdapter focusLostListener = new FocusAdapter() {
+                @Override
+                public void focusLost(FocusEvent e) {
+                    scheduleDeactivation();
+                }
+            };
+            bpc.getControl().addFocusListener(focusLostListener);
+            if (deleteBtn != null) {
+                deleteBtn.addFocusListener(focusLostListener);
+            }
+            shellDecorations.setComboHeight(bpc.getCombo().computeSize(SWT.DEFAULT, SWT.DEFAULT).y);
+        }
+
+        creatingViewer = false;
+        selection = bpc.getStructuredSelection();
+        if (!selection.equals(restoredSelection)) {
+            fireSelectionChanged();
+        }
     }
 
     private void addDeleteButton() {
@@ -66,12 +302,435 @@ public class ComboWidget extends Composite {
         });
     }
 
+    private void viewerSelectionChanged(SelectionChangedEvent event) {
+        if (!creatingViewer) {
+            selection = (IStructuredSelection) event.getSelection();
+            fireSelectionChanged();
+        }
+    }
+
+    private void fireSelectionChanged() {
+        SelectionChangedEvent event = new SelectionChangedEvent(this, selection);
+        for (ISelectionChangedListener listener : selectionChangedListeners) {
+            listener.selectionChanged(event);
+        }
+    }
+
+    /*
+     * Selects the first element of a required lightweight widget, like the
+     * viewer does when the input is set.
+     *
+     * @param keepSelection Keeps a selected element which is still part of
+     *        the input.
+     */
+    private void resolveSelection(boolean keepSelection) {
+        if (optional || contentProvider == null || input == null) {
+            return;
+        }
+        Object[] elements = contentProvider.getElements(input);
+        if (keepSelection && !selection.isEmpty() && Arrays.asList(elements).contains(selection.getFirstElement())) {
+            return;
+        }
+        ViewerComparator order = comparator != null ? comparator : new ViewerComparator();
+        Viewer labelViewer = new LabelViewer();
+        Object first = null;
+        for (Object element : elements) {
+            if (first == null || order.compare(labelViewer, element, first) < 0) {
+                first = element;
+            }
+        }
+        setLightweightSelection(first == null ? StructuredSelection.EMPTY : new StructuredSelection(first));
+    }
+
+    private void setLightweightSelection(IStructuredSelection newSelection) {
+        if (!newSelection.equals(selection)) {
+            selection = newSelection;
+            redraw();
+            fireSelectionChanged();
+        }
+    }
+
+    /*
+     * Gives the comparator access to the labels while there is no viewer.
+     */
+    private final class LabelViewer extends ContentViewer {
+
+        @Override
+        public IBaseLabelProvider getLabelProvider() {
+            return labelProvider;
+        }
+
+        @Override
+        public Control getControl() {
+            return ComboWidget.this;
+        }
+
+        @Override
+        public Object getInput() {
+            return input;
+        }
+
+        @Override
+        public ISelection getSelection() {
+            return selection;
+        }
+
+        @Override
+        public void setSelection(ISelection selection, boolean reveal) {
+        }
+
+        @Override
+        public void refresh() {
+        }
+    }
+
+    private void paintSelectionLabel(PaintEvent e) {
+        if (bpc != null) {
+            return;
+        }
+        GC gc = e.gc;
+        Rectangle area = getClientArea();
+
+        gc.setForeground(getDisplay().getSystemColor(SWT.COLOR_WIDGET_NORMAL_SHADOW));
+        gc.drawRectangle(area.x, area.y, area.width - 1, area.height - 1);
+
+        String label = getSelectionLabel();
+        Point extent = gc.textExtent(label);
+        gc.setForeground(getForeground());
+        gc.setClipping(area.x, area.y, area.width - 2 * LABEL_MARGIN - ARROW_WIDTH, area.height);
+        gc.drawText(label, area.x + LABEL_MARGIN, area.y + (area.height - extent.y) / 2, true);
+        gc.setClipping((Rectangle) null);
+
+        int arrowX = area.x + area.width - LABEL_MARGIN - ARROW_WIDTH;
+        int arrowY = area.y + (area.height - ARROW_WIDTH / 2) / 2;
+        gc.setBackground(getForeground());
+        gc.fillPolygon(new int[] { arrowX, arrowY, arrowX + ARROW_WIDTH, arrowY, arrowX + ARROW_WIDTH / 2,
+                arrowY + ARROW_WIDTH / 2 });
+    }
+
+    private String getSelectionLabel() {
+        if (deferredInputFactory != null && (deferredInput == null || !deferredInput.isDone())) {
+            return ExtendedComboViewer.LOADING_PLACEHOLDER;
+        }
+        if (deferredInput != null && deferredInput.isCompletedExceptionally()) {
+            return ExtendedComboViewer.LOADING_FAILED_PLACEHOLDER;
+        }
+        if (selection.isEmpty()) {
+            return "";
+        }
+        String label = labelProvider.getText(selection.getFirstElement());
+        return label == null ? "" : label;
+    }
+
+    /*
+     * A lightweight widget without combo is as high as the combos of its
+     * shell.
+     */
+    @Override
+    public Point computeSize(int wHint, int hHint, boolean changed) {
+        if (bpc != null) {
+            return super.computeSize(wHint, hHint, changed);
+        }
+        GC gc = new GC(this);
+        try {
+            Point extent = gc.textExtent(getSelectionLabel());
+            int width = wHint == SWT.DEFAULT ? extent.x + 3 * LABEL_MARGIN + ARROW_WIDTH : wHint;
+            int height = hHint;
+            if (height == SWT.DEFAULT) {
+                height = Math.max(extent.y + 2 * LABEL_MARGIN, ShellDecorations.get(getShell()).getComboHeight());
+            }
+            Rectangle trim = computeTrim(0, 0, width, height);
+            return new Point(trim.width, trim.height);
+        } finally {
+            gc.dispose();
+        }
+    }
+
+    /**
+     * @return The combo or {@code null} if the widget is lightweight and does
+     *         not have the focus.
+     */
     public Combo getControl() {
-        return bpc.getCombo();
+        return bpc == null ? null : bpc.getCombo();
     }
 
-    public ComboViewer getViewer() {
+    /**
+     * @return The viewer or {@code null} if the widget is lightweight and does
+     *         not have the focus.
+     * @see #configureViewer(Consumer)
+     */
+    public ExtendedComboViewer<T> getViewer() {
         return bpc;
     }
 
+    /**
+     * Configures the viewer, e.g. sets its search fields. A lightweight widget
+     * applies the configurer to each newly created viewer again, so it should
+     * be cheap. Set the content provider, the comparator and the input on the
+     * widget instead, a lightweight widget keeps them (and the search index)
+     * across activations.
+     */
+    public void configureViewer(Consumer<? super ExtendedComboViewer<T>> configurer) {
+        if (lightweight) {
+            configurers.add(configurer);
+            // e.g. a search key extractor changes the keys
+            invalidateSearchIndex();
+        }
+        if (bpc != null) {
+            configurer.accept(bpc);
+        }
+    }
+
+    /**
+     * @see ExtendedComboViewer#setContentProvider(org.eclipse.jface.viewers.IContentProvider)
+     */
+    public void setContentProvider(IStructuredContentProvider contentProvider) {
+        if (!lightweight) {
+            bpc.setContentProvider(contentProvider);
+            return;
+        }
+        IStructuredContentProvider oldContentProvider = this.contentProvider;
+        this.contentProvider = contentProvider;
+        if (bpc != null) {
+            bpc.setContentProvider(contentProvider);
+        }
+        if (oldContentProvider != null && oldContentProvider != contentProvider) {
+            oldContentProvider.dispose();
+        }
+    }
+
+    /**
+     * @see ExtendedComboViewer#setComparator(ViewerComparator)
+     */
+    public void setComparator(ViewerComparator comparator) {
+        if (!lightweight) {
+            bpc.setComparator(comparator);
+            return;
+        }
+        this.comparator = comparator;
+        invalidateSearchIndex();
+        if (bpc != null) {
+            bpc.setComparator(comparator);
+        } else {
+            resolveSelection(false);
+        }
+    }
+
+    /**
+     * Sets the input. A required lightweight widget selects the first element
+     * right away, even if it never gains the focus.
+     */
+    public void setInput(Object input) {
+        if (!lightweight) {
+            bpc.setInput(input);
+            return;
+        }
+        this.input = input;
+        deferredInputFactory = null;
+        deferredInput = null;
+        if (bpc != null) {
+            bpc.setInput(input);
+        } else {
+            resolveSelection(false);
+            redraw();
+        }
+    }
+
+    public Object getInput() {
+        return lightweight ? input : bpc.getInput();
+    }
+
+    /**
+     * Refreshes the items after the content of the input has changed. A
+     * lightweight widget rebuilds its search index on the next activation
+     * and keeps the selected element if it is still part of the input.
+     */
+    public void refresh() {
+        if (!lightweight) {
+            bpc.refresh();
+            return;
+        }
+        invalidateSearchIndex();
+        if (bpc != null) {
+            bpc.setSharedSearchIndex(searchIndexRegistry, searchIndexVersion);
+            bpc.refresh();
+        } else {
+            resolveSelection(true);
+            redraw();
+        }
+    }
+
+    private void invalidateSearchIndex() {
+        if (ownSearchIndexRegistry) {
+            searchIndexVersion = new Object();
+        }
+    }
+
+    /**
+     * Sets the label provider of the viewer. A lightweight widget also paints
+     * the label of the selection with it and disposes it together with the
+     * widget.
+     */
+    public void setLabelProvider(ILabelProvider labelProvider) {
+        if (!lightweight) {
+            bpc.setLabelProvider(labelProvider);
+            return;
+        }
+        ILabelProvider oldLabelProvider = this.labelProvider;
+        this.labelProvider = labelProvider;
+        invalidateSearchIndex();
+        if (bpc != null) {
+            bpc.setSharedSearchIndex(searchIndexRegistry, searchIndexVersion);
+            bpc.refresh();
+        } else {
+            resolveSelection(false);
+            redraw();
+        }
+        if (oldLabelProvider != labelProvider) {
+            oldLabelProvider.dispose();
+        }
+    }
+
+    /**
+     * @see ExtendedComboViewer#setSearchKeyExtractor(Function)
+     */
+    public void setSearchKeyExtractor(Function<? super T, ? extends CharSequence> extractor) {
+        configureViewer(viewer -> viewer.setSearchKeyExtractor(extractor));
+    }
+
+    /**
+     * @see ExtendedComboViewer#setSearchMetricsListener(SearchMetricsListener)
+     */
+    public void setSearchMetricsListener(SearchMetricsListener listener) {
+        configureViewer(viewer -> viewer.setSearchMetricsListener(listener));
+    }
+
+    /**
+     * A lightweight widget keeps its search index in a registry of its own
+     * unless another one is set here.
+     *
+     * @see ExtendedComboViewer#setSharedSearchIndex(SearchIndexRegistry, Object)
+     */
+    public void setSharedSearchIndex(SearchIndexRegistry registry, Object version) {
+        if (!lightweight) {
+            bpc.setSharedSearchIndex(registry, version);
+            return;
+        }
+        ownSearchIndexRegistry = registry == null;
+        searchIndexRegistry = ownSearchIndexRegistry ? new SearchIndexRegistry() : registry;
+        searchIndexVersion = ownSearchIndexRegistry ? new Object() : version;
+        if (bpc != null) {
+            bpc.setSharedSearchIndex(searchIndexRegistry, searchIndexVersion);
+        }
+    }
+
+    /**
+     * @see ExtendedComboViewer#setDeferredInput(CompletableFuture)
+     */
+    public void setDeferredInput(CompletableFuture<?> input) {
+        if (lightweight) {
+            setLightweightDeferredInput(() -> input, true);
+        } else {
+            bpc.setDeferredInput(input);
+        }
+    }
+
+    /**
+     * A lightweight widget which loads lazily starts loading when it gains
+     * the focus for the first time.
+     *
+     * @see ExtendedComboViewer#setDeferredInput(Supplier, boolean)
+     */
+    public void setDeferredInput(Supplier<?> loader, boolean loadEagerly) {
+        if (lightweight) {
+            setLightweightDeferredInput(() -> ExtendedComboViewer.loadInput(loader), loadEagerly);
+        } else {
+            bpc.setDeferredInput(loader, loadEagerly);
+        }
+    }
+
+    private void setLightweightDeferredInput(Supplier<CompletableFuture<?>> inputFactory, boolean start) {
+        deferredInputFactory = inputFactory;
+        deferredInput = null;
+        input = null;
+        if (start || bpc != null) {
+            startDeferredInput();
+        }
+        if (bpc != null) {
+            bpc.setDeferredInput(deferredInput);
+        } else {
+            redraw();
+        }
+    }
+
+    private void startDeferredInput() {
+        CompletableFuture<?> loadingInput = deferredInputFactory.get();
+        deferredInput = loadingInput;
+        // replaces the placeholder painted by the widget
+        Display display = getDisplay();
+        loadingInput.whenComplete((value, error) -> {
+            if (!display.isDisposed()) {
+                display.asyncExec(() -> {
+                    if (isDisposed() || bpc != null) {
+                        // an active viewer takes the input itself
+                        return;
+                    }
+                    if (deferredInput == loadingInput && isDeferredInputLoaded()) {
+                        resolveSelection(false);
+                    }
+                    redraw();
+                });
+            }
+        });
+    }
+
+    /*
+     * Takes over the input as soon as it is loaded, later viewers get it
+     * directly.
+     */
+    private boolean isDeferredInputLoaded() {
+        if (deferredInput == null || !deferredInput.isDone() || deferredInput.isCompletedExceptionally()) {
+            return false;
+        }
+        input = deferredInput.getNow(null);
+        return true;
+    }
+
+    /**
+     * @see ExtendedComboViewer#getSelectedElement()
+     */
+    @SuppressWarnings("unchecked")
+    public T getSelectedElement() {
+        return bpc == null ? (T) selection.getFirstElement() : bpc.getSelectedElement();
+    }
+
+    @Override
+    public void addSelectionChangedListener(ISelectionChangedListener listener) {
+        selectionChangedListeners.add(listener);
+    }
+
+    @Override
+    public void removeSelectionChangedListener(ISelectionChangedListener listener) {
+        selectionChangedListeners.remove(listener);
+    }
+
+    @Override
+    public ISelection getSelection() {
+        return bpc == null ? selection : bpc.getSelection();
+    }
+
+    /**
+     * A lightweight widget without focus keeps the selection until the
+     * viewer is created. It is not checked against the input.
+     */
+    @Override
+    public void setSelection(ISelection selection) {
+        if (bpc != null) {
+            bpc.setSelection(selection);
+            return;
+        }
+        setLightweightSelection(selection instanceof IStructuredSelection
+                ? (IStructuredSelection) selection : StructuredSelection.EMPTY);
+    }
+
 }
@@ -1,9 +1,30 @@
 package combowidget.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 import org.eclipse.jface.fieldassist.ControlDecoration;
 import org.eclipse.jface.fieldassist.FieldDecorationRegistry;
 import org.eclipse.jface.viewers.ComboViewer;
-import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.IBaseLabelProvider;
+import org.eclipse.jface.viewers.ILabelProvider;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jface.viewers.LabelProviderChangedEvent;
 import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerComparator;
@@ -11,6 +32,8 @@ import org.eclipse.jface.viewers.ViewerFilter;
 import org.eclipse.jface.window.DefaultToolTip;
 import org.eclipse.jface.window.ToolTip;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.dnd.Clipboard;
+import org.eclipse.swt.dnd.TextTransfer;
 import org.eclipse.swt.events.FocusAdapter;
 import org.eclipse.swt.events.FocusEvent;
 import org.eclipse.swt.events.KeyAdapter;
@@ -25,6 +48,16 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Display;
 
+import combowidget.engine.CompiledQuery;
+import combowidget.engine.FilterResult;
+import combowidget.engine.MatchStrategy;
+import combowidget.engine.PrefixIndex;
+import combowidget.engine.SearchEngine;
+import combowidget.engine.SearchExecutor;
+import combowidget.engine.SearchIndexRegistry;
+import combowidget.impl.SearchMeasurement.Mode;
+import combowidget.impl.SearchMeasurement.Phase;
+
 /*
  * PROGRAMMATIC SELECTIONS NOT PRESERVED PROBLEM
  *
@@ -76,6 +109,7 @@ import org.eclipse.swt.widgets.Display;
  * <li>Search as you type: case-insensitive, wildcards (*) are supported.</li>
  * <li>Substring search and filter: case-insensitive, wildcards (*) are supported.</li>
  * <li>RegEx search and filter: case-sensitive.</li>
+ * <li>Fuzzy search and filter: case-insensitive, best matches first.</li>
  * </ul>
  *
  * Further notes:
@@ -86,20 +120,165 @@ import org.eclipse.swt.widgets.Display;
  *
  * <li>A decoration which displays a tooltip about how to use this control is
  * displayed at {@code SWT.TOP | SWT.RIGHT}</li>
+ *
+ * <li>The matching itself is done by a headless {@link SearchEngine}. The
+ * viewer feeds it with the input in comparator order and shows its
+ * results.</li>
  * </ul>
  *
  * @author zaunerc
  */
-public class ExtendedComboViewer extends ComboViewer {
+public class ExtendedComboViewer<T> extends ComboViewer {
 
     private static final boolean DRAW_BORDER_AROUND_CONTROL = false;
 
     private static final char ESCAPE_CHAR = ':';
 
+    private static final char FUZZY_ESCAPE_CHAR = '~';
+
+    private static final char NUMERIC_ESCAPE_CHAR = '#';
+
+    private static final int DEFAULT_FUZZY_RESULT_LIMIT = 50;
+
+    private static final int DEFAULT_RESULT_WINDOW_SIZE = 500;
+
+    /*
+     * Refreshes which only change the filters remove and add single items as
+     * long as no more than this many items change. Otherwise all items are
+     * replaced at once.
+     */
+    private static final int MAX_INCREMENTAL_ITEM_CHANGES = 32;
+
+    static final String LOADING_PLACEHOLDER = "(wird geladen...)";
+
+    static final String LOADING_FAILED_PLACEHOLDER = "(Laden fehlgeschlagen)";
+
     private String keySequence = "";
     private boolean allowEmptySelection;
 
+    /*
+     * Matches the queries against the input. Its elements are dropped
+     * whenever the input, its order or the search keys change and set again
+     * on the next search.
+     */
+    private final SearchEngine<T> searchEngine = new SearchEngine<>(this::getSearchKeyText);
+
+    /*
+     * If set, the search index is shared with all viewers bound to the same
+     * input and version.
+     */
+    private SearchIndexRegistry sharedIndexRegistry;
+    private Object sharedIndexVersion;
+
+    private boolean asyncFiltering;
+    private AsyncSearch pendingSearch;
+
+    /*
+     * Deferred input: the combo shows the placeholder as its only item and
+     * ignores keystrokes until pendingInput completes. A loader which has not
+     * been started yet is started as soon as the combo gains the focus. The
+     * loader of the pending input is kept to retry a failed load.
+     */
+    private CompletableFuture<?> pendingInput;
+    private Supplier<?> pendingInputLoader;
+    private Supplier<?> inputLoader;
+    private String placeholder;
+
+    /*
+     * Virtual popup mode: the items live in virtualItems instead of the native
+     * combo, which only holds the label of the selected item. The list is
+     * shown by a VirtualListPopup.
+     */
+    private boolean virtualPopup;
+    private final List<String> virtualItems = new ArrayList<>();
+    private int virtualSelectionIndex = -1;
+    private VirtualListPopup popup;
+
+    /*
+     * Paged mode: the items are fetched page by page from a paged content
+     * provider through the page cache instead of being taken from the input.
+     * They are shown in the virtual popup, the key sequence is the query of
+     * the shown items. The selected item is kept separately because its page
+     * may have been evicted or it may not match the query.
+     */
+    private PageCache<T> pageCache;
+    private String pagedQuery = "";
+    private int pagedItemCount;
+    private T pagedSelection;
+
+    /*
+     * Keystrokes are collected into a batch and the key sequence is evaluated
+     * once per batch.
+     */
+    private int keystrokeCoalescingDelay;
+    private boolean searchScheduled;
+    private final Runnable scheduledSearch = this::runScheduledSearch;
+
+    /*
+     * Type-ahead index over the combo items. Dropped whenever the combo items
+     * change and rebuilt on the next standard search.
+     */
+    private PrefixIndex prefixIndex;
+
+    private int fuzzyResultLimit = DEFAULT_FUZZY_RESULT_LIMIT;
+
+    /*
+     * Substring and regex filters show the first shownMatchCount matches of
+     * shownResult, followed by a "more" row at moreRowIndex if there are (or
+     * may be) further matches.
+     */
+    private int resultWindowSize = DEFAULT_RESULT_WINDOW_SIZE;
+    private FilterResult shownResult;
+    private int shownMatchCount;
+    private int moreRowIndex = -1;
+
+    /*
+     * The element of the last selection changed event, restored if the user
+     * picks the "more" row in the native list.
+     */
+    private Object selectedElement;
+
+    /*
+     * The comparator which was replaced by the relevance order of a fuzzy
+     * search. Restored as soon as the fuzzy search ends.
+     */
+    private ViewerComparator comparatorBeforeFuzzySearch;
+
+    /*
+     * Computes the text the search functions match against. Falls back to
+     * the label if null.
+     */
+    private Function<? super T, ? extends CharSequence> searchKeyExtractor;
+
+    /*
+     * True while the filters or the comparator are being changed. Refreshes
+     * triggered by such a change do not change any labels and must not
+     * invalidate the search key cache.
+     */
+    private boolean changingFilters;
+
+    /*
+     * True while the comparator of a fuzzy search is installed. The refresh
+     * is left to the following change of the filters, which only sorts the
+     * best matches instead of the whole input.
+     */
+    private boolean refreshDeferred;
+
+    /*
+     * Filtered and sorted children computed by a refresh which could not be
+     * applied incrementally. Handed over to the full refresh.
+     */
+    private Object[] sortedChildren;
+
+    private SearchMetricsListener metricsListener = SearchMetricsListener.NONE;
+    private SearchMeasurement measurement;
+
+    /*
+     * The tooltip is either attached to the combo or shared with the other
+     * lightweight combos of the shell, see ShellDecorations.
+     */
     private final DefaultToolTip toolTip;
+    private final boolean sharedToolTip;
     private final Point toolTipLocation = new Point(-3, -24);
 
     /**
@@ -109,6 +288,15 @@ public class ExtendedComboViewer extends ComboViewer {
      * @see ComboViewer#ComboViewer(Composite, int)
      */
     public ExtendedComboViewer(Composite parent, int style, boolean allowEmptySelection) {
+        this(parent, style, allowEmptySelection, null);
+    }
+
+    /**
+     * @param shellDecorations If not {@code null} the decoration and the
+     *        tooltip are shared with the other lightweight combos of the
+     *        shell.
+     */
+    ExtendedComboViewer(Composite parent, int style, boolean allowEmptySelection, ShellDecorations shellDecorations) {
 
         super(parent, style | SWT.READ_ONLY | SWT.BORDER);
 
@@ -116,27 +304,92 @@ public class ExtendedComboViewer extends ComboViewer {
 
         addListeners();
         setComparator(new ViewerComparator());
-        addDecoration(getControl());
 
-        toolTip = new DefaultToolTip(getControl(), ToolTip.RECREATE, true);
-        toolTip.deactivate();
+        if (shellDecorations == null) {
+            addDecoration(getControl());
+            toolTip = new DefaultToolTip(getControl(), ToolTip.RECREATE, true);
+            toolTip.deactivate();
+            sharedToolTip = false;
+        } else {
+            shellDecorations.decorate(getControl(), this::addDecoration);
+            toolTip = shellDecorations.getToolTip();
+            sharedToolTip = true;
+        }
+    }
+
+    /*
+     * The "more" row has no element. Its selection listener has to run before
+     * the one of the viewer, which would otherwise report an empty selection
+     * when the user picks the row in the native list.
+     */
+    @Override
+    protected void hookControl(Control control) {
+        control.addListener(SWT.Selection, event -> {
+            if (!virtualPopup && moreRowIndex > -1 && getCombo().getSelectionIndex() == moreRowIndex) {
+                restoreSelectionBeforeMoreRow();
+                showMoreMatches();
+            }
+        });
+        super.hookControl(control);
+    }
+
+    private void restoreSelectionBeforeMoreRow() {
+        // the list holds a window of matches only
+        for (int i = 0; i < moreRowIndex; i++) {
+            if (Objects.equals(getElementAt(i), selectedElement)) {
+                listSetSelection(new int[] { i });
+                return;
+            }
+        }
+        listSetSelection(new int[] { 0 });
     }
 
     private void addListeners() {
         getControl().addKeyListener(new CustomKeyAdapter());
 
         getControl().addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusGained(FocusEvent e) {
+                startInputLoader();
+            }
+
             @Override
             public void focusLost(FocusEvent e) {
-                LOGGER.trace("Widget lost focus. Resetting key sequence, combo filter and tooltip.");
-                resetComboFiltersAndHideTooltip();
-                keySequence = "";
+                if (popup != null && popup.isVisible()) {
+                    // the user may have clicked into the virtual list
+                    getControl().getDisplay().asyncExec(() -> {
+                        if (!getControl().isDisposed() && !getControl().isFocusControl() && !popup.hasFocus()) {
+                            handleFocusLost();
+                        }
+                    });
+                } else {
+                    handleFocusLost();
+                }
+            }
+        });
+
+        // the native list only holds the selected item in virtual popup mode
+        getCombo().addListener(SWT.MouseDown, event -> {
+            if (!virtualPopup || event.button != 1) {
+                return;
             }
+            boolean listVisible = isListVisible();
+            event.doit = false;
+            getControl().getDisplay().asyncExec(() -> {
+                if (!getControl().isDisposed() && virtualPopup) {
+                    getCombo().setListVisible(false);
+                    setListVisible(!listVisible);
+                }
+            });
+        });
+
+        addSelectionChangedListener((selectionChangedEvent) -> {
+            selectedElement = ((IStructuredSelection) selectionChangedEvent.getSelection()).getFirstElement();
         });
 
         addSelectionChangedListener((selectionChangedEvent) -> {
             LOGGER.trace("Selection changed: New selection is >" + getStructuredSelection() + "< (index "
-                    + getCombo().getSelectionIndex() + ")");
+                    + getSelectionIndex() + ")");
         });
 
         if (DRAW_BORDER_AROUND_CONTROL) {
@@ -144,11 +397,20 @@ public class ExtendedComboViewer extends ComboViewer {
         }
     }
 
+    private void handleFocusLost() {
+        LOGGER.trace("Widget lost focus. Resetting key sequence, combo filter and tooltip.");
+        resetComboFiltersAndHideTooltip();
+        keySequence = "";
+    }
+
     /*
      * Selects the first item as soon as the input of the combo viewer is set.
      */
     @Override
     protected void inputChanged(Object input, Object oldInput) {
+        cancelPendingSearch();
+        forgetDeferredInput();
+        invalidateSearchKeys();
         if (allowEmptySelection) {
             LOGGER.trace("Viewer input changed. Not selecting element at index 0 because"
                     + " user does not want us to prevent empty selection state.");
@@ -158,214 +420,1836 @@ public class ExtendedComboViewer extends ComboViewer {
             super.inputChanged(input, oldInput);
             setSelectedComboItem(0);
         }
+        if (input != null) {
+            getSearchEngine().buildIndexes();
+        }
     }
 
-    private void addDecoration(Control control) {
-
-        final ControlDecoration deco = new ControlDecoration(control, SWT.TOP | SWT.LEFT);
+    /**
+     * Inputs with at least this number of elements get a trigram index which
+     * speeds up substring filtering. The index is built as soon as the input
+     * is set. Defaults to {@value SearchEngine#DEFAULT_TRIGRAM_INDEX_THRESHOLD}.
+     *
+     * @param threshold Use {@link Integer#MAX_VALUE} to disable the index.
+     */
+    public void setTrigramIndexThreshold(int threshold) {
+        searchEngine.setTrigramIndexThreshold(threshold);
+    }
 
-        // use an existing image
-        Image image = FieldDecorationRegistry.getDefault().getFieldDecoration(FieldDecorationRegistry.DEC_CONTENT_PROPOSAL)
-                .getImage();
-        deco.setImage(image);
+    public int getTrigramIndexThreshold() {
+        return searchEngine.getTrigramIndexThreshold();
+    }
 
-        // @formatter:off
-        deco.setDescriptionText("Type to search...\n" + "\n- Use '" + ESCAPE_CHAR
-                + "' to enable substring filtering:\n" + "    Case-insensitve.\n"
-                + "    '*' can be used as a wildcard.\n" + "- Use '" + ESCAPE_CHAR + ESCAPE_CHAR
-                + "' to enable RegEx filtering:\n" + "    Case-sensitive.\n"
-                + "- Type 'Del' to reset input.");
-        // @formatter:on
+    /**
+     * Limits the number of chars the regex engine may read per char of a key
+     * while evaluating a '{@value #ESCAPE_CHAR}{@value #ESCAPE_CHAR}' query.
+     * If a key uses up its budget (e.g. because of catastrophic backtracking)
+     * the query is abandoned and the filter is deactivated.
+     * Defaults to {@value SearchEngine#DEFAULT_REGEX_STEPS_PER_CHAR}.
+     *
+     * @param steps Use {@link Long#MAX_VALUE} to disable the limit.
+     */
+    public void setRegexStepsPerChar(long steps) {
+        searchEngine.setRegexStepsPerChar(steps);
+    }
 
-        deco.setShowOnlyOnFocus(true);
+    public long getRegexStepsPerChar() {
+        return searchEngine.getRegexStepsPerChar();
     }
 
-    protected void regexSearchAndFilter() {
+    /**
+     * If enabled, the items are not pushed into the native combo. The native
+     * combo only holds the label of the selected item and the drop down list
+     * is replaced by a virtual table which materializes visible rows only.
+     * Use this for inputs which are too big for the native list (100k+ items).
+     * Keyboard behaviour, search modes and selection handling stay the same.
+     * Disabled by default. Always enabled in paged mode.
+     *
+     * <p>
+     * A click on the combo opens the virtual list and closes the native one.
+     * On platforms which open the native list before the mouse event is
+     * delivered, the native list may flash up briefly with the selected item
+     * only. F4 and Alt+Down always open the virtual list.
+     * </p>
+     */
+    public void setVirtualPopup(boolean virtualPopup) {
+        if (this.virtualPopup == virtualPopup || pageCache != null) {
+            return;
+        }
 
-        LOGGER.trace("Executing regex search and filter function. keySequence is >" + keySequence + "<");
+        setListVisible(false);
+        ISelection selection = getSelection();
 
-        // remove ESCAPE_CHAR
-        String pattern = keySequence.substring(2);
+        this.virtualPopup = virtualPopup;
+        getCombo().removeAll();
+        virtualItems.clear();
+        virtualSelectionIndex = -1;
 
-        final String finalPattern = pattern;
-        LOGGER.trace("regex filter pattern: >" + finalPattern + "<");
+        refresh();
+        setSelectionToWidget(selection, false);
+    }
 
-        boolean filterWithNoResults = true;
+    public boolean isVirtualPopup() {
+        return virtualPopup;
+    }
 
-        for (Object element : getRawChildren(getInput())) {
-            String elementLabel = ((LabelProvider) getLabelProvider()).getText(element);
-            if (elementLabel.matches(finalPattern)) {
-                filterWithNoResults = false;
-                break;
-            }
+    private VirtualListPopup getPopup() {
+        if (popup == null) {
+            popup = new VirtualListPopup(getControl(), this::getVirtualItem, index -> {
+                boolean moreRow = index == moreRowIndex;
+                setSelectedComboItem(index);
+                if (!moreRow) {
+                    popup.setVisible(false);
+                    getControl().setFocus();
+                }
+            }, this::handleFocusLost);
         }
+        return popup;
+    }
 
-        if (filterWithNoResults) {
+    private void setListVisible(boolean visible) {
+        if (virtualPopup) {
+            getPopup().setVisible(visible);
+            getPopup().setSelection(virtualSelectionIndex);
+        } else {
+            getCombo().setListVisible(visible);
+        }
+    }
 
-            ViewerFilter[] viewerFilters = { new ViewerFilter() {
-                @Override
-                public boolean select(Viewer viewer, Object parentElement, Object element) {
-                    return true;
-                }
-            } };
+    private boolean isListVisible() {
+        return virtualPopup ? popup != null && popup.isVisible() : getCombo().getListVisible();
+    }
 
-            setFilters(viewerFilters);
-            toolTip.setText(keySequence
-                    + " (RegEx-Suche - Filter liefert KEINE Ergebnisse und wurde daher deaktiviert. Zeige alle "
-                    + getRawChildren(getInput()).length + " Elemente)");
-        } else {
-            ViewerFilter[] viewerFilters = { new ViewerFilter() {
-                @Override
-                public boolean select(Viewer viewer, Object parentElement, Object element) {
-                    String elementLabel = ((LabelProvider) getLabelProvider()).getText(element);
-                    if (elementLabel.matches(finalPattern)) {
-                        return true;
-                    }
-                    return false;
-                }
-            } };
+    private int getSelectionIndex() {
+        int[] selectionIndices = listGetSelectionIndices();
+        return selectionIndices.length > 0 ? selectionIndices[0] : -1;
+    }
 
-            setFilters(viewerFilters);
-            toolTip.setText(keySequence + " (RegEx-Suche - zeige " + getFilteredChildren(getInput()).length + " von "
-                    + getRawChildren(getInput()).length + " Elementen)");
+    @Override
+    protected void listAdd(String string, int index) {
+        if (!virtualPopup) {
+            super.listAdd(string, index);
+            return;
         }
+        virtualItems.add(index, string);
+        if (virtualSelectionIndex >= index) {
+            virtualSelectionIndex++;
+        }
+        virtualItemsChanged();
+    }
 
-        toolTip.show(toolTipLocation);
-        setSelectedComboItem(0);
+    @Override
+    protected void listSetItem(int index, String string) {
+        if (!virtualPopup) {
+            super.listSetItem(index, string);
+            return;
+        }
+        virtualItems.set(index, string);
+        virtualItemsChanged();
     }
 
-    protected void substrSearchAndFilter() {
+    @Override
+    protected int[] listGetSelectionIndices() {
+        if (!virtualPopup) {
+            return super.listGetSelectionIndices();
+        }
+        return virtualSelectionIndex < 0 ? new int[0] : new int[] { virtualSelectionIndex };
+    }
 
-        LOGGER.trace("Executing substring search and filter function. keySequence is >" + keySequence + "<");
+    @Override
+    protected int listGetItemCount() {
+        return virtualPopup ? getVirtualItemCount() : super.listGetItemCount();
+    }
 
-        // remove ESCAPE_CHAR
-        String pattern = keySequence.substring(1);
-        pattern = ".*" + pattern.replaceAll("\\*", ".*") + ".*";
+    private int getVirtualItemCount() {
+        return pageCache != null ? pagedItemCount : virtualItems.size();
+    }
 
-        final String finalPattern = pattern;
+    private String getVirtualItem(int index) {
+        if (pageCache == null) {
+            return virtualItems.get(index);
+        }
+        T item = pageCache.getItem(pagedQuery, index);
+        return item == null ? "" : getLabelText(item);
+    }
 
-        LOGGER.trace("substring filter pattern: >" + finalPattern + "<");
+    @Override
+    protected void listSetItems(String[] labels) {
+        if (!virtualPopup) {
+            super.listSetItems(labels);
+            return;
+        }
+        virtualItems.clear();
+        virtualItems.addAll(Arrays.asList(labels));
+        virtualSelectionIndex = -1;
+        virtualItemsChanged();
+    }
 
-        boolean filterWithNoResults = true;
+    @Override
+    protected void listRemoveAll() {
+        if (!virtualPopup) {
+            super.listRemoveAll();
+            return;
+        }
+        virtualItems.clear();
+        virtualSelectionIndex = -1;
+        virtualItemsChanged();
+    }
 
-        for (Object element : getRawChildren(getInput())) {
-            String elementLabel = ((LabelProvider) getLabelProvider()).getText(element);
-            if (elementLabel.toLowerCase().matches(finalPattern.toLowerCase())) {
-                filterWithNoResults = false;
-                break;
-            }
+    @Override
+    protected void listRemove(int index) {
+        if (!virtualPopup) {
+            super.listRemove(index);
+            return;
+        }
+        virtualItems.remove(index);
+        if (virtualSelectionIndex == index) {
+            virtualSelectionIndex = -1;
+        } else if (virtualSelectionIndex > index) {
+            virtualSelectionIndex--;
         }
+        virtualItemsChanged();
+    }
 
-        if (filterWithNoResults) {
+    @Override
+    protected void listSetSelection(int[] ixs) {
+        if (!virtualPopup) {
+            super.listSetSelection(ixs);
+            return;
+        }
+        virtualSelectionIndex = ixs.length > 0 ? ixs[0] : -1;
+        virtualSelectionChanged();
+    }
 
-            ViewerFilter[] viewerFilters = { new ViewerFilter() {
-                @Override
-                public boolean select(Viewer viewer, Object parentElement, Object element) {
-                    return true;
-                }
-            } };
+    @Override
+    protected void listShowSelection() {
+        if (!virtualPopup) {
+            super.listShowSelection();
+            return;
+        }
+        if (popup != null) {
+            popup.setSelection(virtualSelectionIndex);
+        }
+    }
 
-            setFilters(viewerFilters);
-            toolTip.setText(keySequence
-                    + " (Substringsuche - Filter liefert keine Ergebnisse und wurde daher deaktiviert. Zeige alle "
-                    + getRawChildren(getInput()).length + " Elemente.)");
-        } else {
-            ViewerFilter[] viewerFilters = { new ViewerFilter() {
-                @Override
-                public boolean select(Viewer viewer, Object parentElement, Object element) {
-                    String elementLabel = ((LabelProvider) getLabelProvider()).getText(element);
-                    if (elementLabel.toLowerCase().matches(finalPattern.toLowerCase())) {
-                        return true;
-                    }
-                    return false;
-                }
-            } };
+    @Override
+    protected void listDeselectAll() {
+        if (!virtualPopup) {
+            super.listDeselectAll();
+            return;
+        }
+        virtualSelectionIndex = -1;
+        virtualSelectionChanged();
+    }
 
-            setFilters(viewerFilters);
-            toolTip.setText(keySequence + " (Substringsuche - zeige " + getFilteredChildren(getInput()).length + " von "
-                    + getRawChildren(getInput()).length + " Elementen)");
+    private void virtualItemsChanged() {
+        if (popup != null) {
+            popup.setItemCount(getVirtualItemCount());
         }
+        virtualSelectionChanged();
+    }
 
-        toolTip.show(toolTipLocation);
-        setSelectedComboItem(0);
+    /*
+     * Mirrors the selected item into the native combo.
+     */
+    private void virtualSelectionChanged() {
+        Combo combo = getCombo();
+        String label = getVirtualSelectionLabel();
+        if (label == null) {
+            if (combo.getItemCount() > 0) {
+                combo.removeAll();
+            }
+        } else {
+            if (combo.getItemCount() != 1 || !combo.getItem(0).equals(label)) {
+                combo.setItems(new String[] { label });
+            }
+            combo.select(0);
+        }
+        if (popup != null) {
+            popup.setSelection(virtualSelectionIndex);
+        }
     }
 
-    protected void standardSearch() {
+    private String getVirtualSelectionLabel() {
+        if (pageCache != null) {
+            return pagedSelection == null ? null : getLabelText(pagedSelection);
+        }
+        return virtualSelectionIndex < 0 ? null : virtualItems.get(virtualSelectionIndex);
+    }
 
-        LOGGER.trace("Executing standard search function. keySequence is >" + keySequence + "<");
+    private String getLabelText(Object element) {
+        IBaseLabelProvider labelProvider = getLabelProvider();
+        String text = labelProvider instanceof ILabelProvider ? ((ILabelProvider) labelProvider).getText(element)
+                : String.valueOf(element);
+        return text == null ? "" : text;
+    }
 
-        toolTip.setText(keySequence + " (Element " + getCombo().getSelectionIndex() + " von "
-                + getCombo().getItemCount() + " selektiert)");
-        toolTip.show(toolTipLocation);
+    /**
+     * Fetches the items page by page from the given provider instead of
+     * taking them from the input. Use this for item sources which are too big
+     * to be loaded into memory, e.g. millions of rows in a database. The
+     * items are shown in the virtual popup (see
+     * {@link #setVirtualPopup(boolean)}), a page is fetched as soon as one of
+     * its rows becomes visible. Fetched pages are kept in a bounded LRU
+     * cache, by default 50 pages of 100 items.
+     *
+     * <p>
+     * The key sequence is handed to the provider as query, i.e. every search
+     * filters at the source and selects the first match. The input, the
+     * content provider, the comparator and the in-memory search modes of the
+     * viewer are not used in paged mode.
+     * </p>
+     *
+     * @param provider {@code null} ends paged mode.
+     */
+    public void setPagedContentProvider(PagedContentProvider<T> provider) {
+        setPagedContentProvider(provider, PageCache.DEFAULT_PAGE_SIZE, PageCache.DEFAULT_MAX_PAGES);
+    }
 
-        int indexOfSelection = 0;
-        for (String item : getCombo().getItems()) {
-            if (item.toLowerCase().startsWith(keySequence.toLowerCase())) {
-                setSelectedComboItem(indexOfSelection);
-                return;
+    /**
+     * @param pageSize The number of items fetched at once.
+     * @param maxCachedPages The maximum number of pages kept in the cache.
+     * @see #setPagedContentProvider(PagedContentProvider)
+     */
+    public void setPagedContentProvider(PagedContentProvider<T> provider, int pageSize, int maxCachedPages) {
+
+        setListVisible(false);
+        resetComboFiltersAndHideTooltip();
+        keySequence = "";
+
+        if (provider == null) {
+            if (pageCache != null) {
+                pageCache = null;
+                pagedSelection = null;
+                virtualSelectionIndex = -1;
+                refresh();
             }
-            indexOfSelection++;
+            return;
         }
-    }
 
-    protected void setSelectedComboItem(int indexOfSelection) {
-        if (indexOfSelection < getCombo().getItemCount() && indexOfSelection > -1) {
-            LOGGER.trace("Selecting item at index " + indexOfSelection);
-            // Set structured selection to fire event for viewer binding.
-            Object elementAt = getElementAt(indexOfSelection);
-            setSelection(new StructuredSelection(elementAt));
+        setVirtualPopup(true);
+        getCombo().removeAll();
+        virtualItems.clear();
+
+        pageCache = new PageCache<>(provider, pageSize, maxCachedPages);
+        pagedSelection = null;
+        setPagedQuery("");
+
+        if (!allowEmptySelection && pagedItemCount > 0) {
+            setSelectedComboItem(0);
         } else {
-            LOGGER.trace("Not updating selection. Combo has " + getCombo().getItemCount()
-                    + " items at the moment. Request was to select item at index " + indexOfSelection + ".");
+            setSelection(StructuredSelection.EMPTY);
         }
     }
 
-    protected void resetComboFiltersAndHideTooltip() {
-        getCombo().setListVisible(false);
-        resetFilters();
-        toolTip.setText("");
-        toolTip.hide();
+    public boolean isPaged() {
+        return pageCache != null;
     }
 
-    private final class BorderPaintListener implements PaintListener {
-        @Override
-        public void paintControl(PaintEvent event) {
-            GC gc = event.gc;
-            gc.setLineWidth(8);
-            gc.setForeground(Display.getCurrent().getSystemColor(SWT.COLOR_DARK_GREEN));
-            gc.drawRectangle(getControl().getShell().getClientArea().x, getControl().getShell().getClientArea().y,
-                    getControl().getBounds().width, getControl().getBounds().height);
-        }
+    /*
+     * Shows the items matching the given query. The selection is kept, it is
+     * only highlighted if its page of the query's matches is cached.
+     */
+    private void setPagedQuery(String query) {
+        pagedQuery = query;
+        pagedItemCount = pageCache.getItemCount(query);
+        virtualSelectionIndex = pagedSelection == null ? -1 : pageCache.indexOf(query, pagedSelection);
+        virtualItemsChanged();
     }
 
-    private class CustomKeyAdapter extends KeyAdapter {
+    protected void pagedSearch() {
 
-        @Override
-        public void keyPressed(KeyEvent keyEvent) {
+        LOGGER.trace("Executing paged search. keySequence is >" + keySequence + "<");
 
-            LOGGER.trace("Received key event: >" + keyEvent.character + "<");
-            LOGGER.trace("keySequence before processing key event is: >" + keySequence + "<");
+        long start = startPhase();
+        setPagedQuery(keySequence);
+        endPhase(Phase.MATCH, start);
 
-            if (keyEvent.keyCode == SWT.DEL) {
-                LOGGER.trace("User requested to delete any input and reset filter state.");
-                keySequence = "";
-                resetComboFiltersAndHideTooltip();
-            } else if (Character.isLetterOrDigit(keyEvent.character)
-                    || ",;.:-_+* ".contains(Character.toString(keyEvent.character)) || keyEvent.keyCode == SWT.BS) {
-                /*
-                 * keySequence whitelist characters: We WANT these chars to
-                 * modify the keySequence and initiate a search / filtering
-                 * operation.
-                 */
-                applySearchAndFilterOperation(keyEvent, (Combo) keyEvent.widget);
-            }
+        int matchCount = pagedItemCount;
+        if (matchCount == 0) {
+            setPagedQuery("");
+            toolTip.setText(keySequence + " (Suche in der Datenquelle - Filter liefert keine Ergebnisse und wurde"
+                    + " daher deaktiviert. Zeige alle " + pagedItemCount + " Elemente)");
+        } else {
+            toolTip.setText(keySequence + " (Suche in der Datenquelle - " + matchCount + " Treffer)");
+        }
+        showToolTip();
+        // like the other search modes, also if the filter was deactivated
+        setSelectedComboItem(0);
+        finishMeasurement(pageCache.getItemCount(""), 0, matchCount);
+    }
 
-            LOGGER.trace("keySequence after processing key event is: >" + keySequence + "<");
+    @Override
+    public Object getElementAt(int index) {
+        if (pageCache == null) {
+            return super.getElementAt(index);
         }
+        return index < 0 || index >= pagedItemCount ? null : pageCache.getItem(pagedQuery, index);
+    }
 
-        protected void applySearchAndFilterOperation(KeyEvent keyEvent, Combo combo) {
+    @SuppressWarnings("rawtypes")
+    @Override
+    protected List getSelectionFromWidget() {
+        if (pageCache == null) {
+            return super.getSelectionFromWidget();
+        }
+        return pagedSelection == null ? Collections.emptyList() : Collections.singletonList(pagedSelection);
+    }
 
-            if (keyEvent.keyCode == SWT.BS && !keySequence.isEmpty()) {
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    protected void setSelectionToWidget(List list, boolean reveal) {
+        if (pageCache == null) {
+            super.setSelectionToWidget(list, reveal);
+            return;
+        }
+        pagedSelection = list == null || list.isEmpty() ? null : (T) list.get(0);
+        virtualSelectionIndex = pagedSelection == null ? -1 : pageCache.indexOf(pagedQuery, pagedSelection);
+        virtualSelectionChanged();
+    }
+
+    /**
+     * Reports the timings and counts of every search to the given listener,
+     * e.g. a {@link HistogramSearchMetrics}. No measurements are taken while
+     * {@link SearchMetricsListener#NONE} (the default) is set.
+     *
+     * @param listener {@code null} resets the default.
+     */
+    public void setSearchMetricsListener(SearchMetricsListener listener) {
+        this.metricsListener = listener == null ? SearchMetricsListener.NONE : listener;
+    }
+
+    public SearchMetricsListener getSearchMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * A fuzzy search ('{@value #FUZZY_ESCAPE_CHAR}') only shows the given
+     * number of best matches, ordered by relevance. Defaults to
+     * {@value #DEFAULT_FUZZY_RESULT_LIMIT}.
+     */
+    public void setFuzzyResultLimit(int limit) {
+        this.fuzzyResultLimit = limit;
+    }
+
+    public int getFuzzyResultLimit() {
+        return fuzzyResultLimit;
+    }
+
+    /**
+     * Substring and regex filters only show the first matches (in comparator
+     * order) followed by a row which shows the next matches when selected.
+     * Evaluation stops as soon as the first window is filled and the
+     * remaining matches are counted in the background, so the first matches
+     * show up quickly no matter how many elements match. Defaults to
+     * {@value #DEFAULT_RESULT_WINDOW_SIZE}.
+     *
+     * @param size Use {@link Integer#MAX_VALUE} to always show all matches.
+     */
+    public void setResultWindowSize(int size) {
+        this.resultWindowSize = size;
+    }
+
+    public int getResultWindowSize() {
+        return resultWindowSize;
+    }
+
+    /**
+     * Substring and regex queries which have to test at least this number of
+     * elements are evaluated in parallel on all cores. The filtered items keep
+     * the order defined by the viewer's comparator. Defaults to
+     * {@value SearchEngine#DEFAULT_PARALLEL_MATCHING_THRESHOLD}.
+     *
+     * @param threshold Use {@link Integer#MAX_VALUE} to always evaluate on a
+     *        single thread.
+     */
+    public void setParallelMatchingThreshold(int threshold) {
+        searchEngine.setParallelMatchingThreshold(threshold);
+    }
+
+    public int getParallelMatchingThreshold() {
+        return searchEngine.getParallelMatchingThreshold();
+    }
+
+    /**
+     * If enabled, substring and regex filtering run on a background thread
+     * against an immutable snapshot of the search keys. Every keystroke
+     * cancels the evaluation of the previous query and only the result of the
+     * latest query is applied to the combo. Disabled by default.
+     */
+    public void setAsyncFiltering(boolean asyncFiltering) {
+        this.asyncFiltering = asyncFiltering;
+    }
+
+    public boolean isAsyncFiltering() {
+        return asyncFiltering;
+    }
+
+    /**
+     * Keystrokes which arrive within the given delay are merged into the key
+     * sequence and evaluated as one query, i.e. the combo is filtered and
+     * refreshed once per batch instead of once per char. This keeps fast
+     * typists and barcode scanners from triggering a refresh per char.
+     *
+     * @param milliseconds The delay after the last keystroke. Defaults to
+     *        {@code 0}, which only merges keystrokes that are already queued
+     *        when the first of them is processed.
+     */
+    public void setKeystrokeCoalescingDelay(int milliseconds) {
+        this.keystrokeCoalescingDelay = milliseconds;
+    }
+
+    public int getKeystrokeCoalescingDelay() {
+        return keystrokeCoalescingDelay;
+    }
+
+    /**
+     * By default the search functions match against the label of an element.
+     * Use a search key extractor to match against a different text, e.g. a
+     * code followed by a name, while the label stays free for presentation.
+     * The extractor is called once per element, the keys are cached until
+     * the input or the element changes.
+     *
+     * @param extractor {@code null} to match against the labels again.
+     */
+    public void setSearchKeyExtractor(Function<? super T, ? extends CharSequence> extractor) {
+        invalidateSearchKeys();
+        this.searchKeyExtractor = extractor;
+    }
+
+    public Function<? super T, ? extends CharSequence> getSearchKeyExtractor() {
+        return searchKeyExtractor;
+    }
+
+    /**
+     * Registers a named search field. Typing {@code name:query} (e.g.
+     * {@code code:17*} or {@code name:bre}) filters by the given field only:
+     * case-insensitive, {@code *} can be used as a wildcard. Each field is
+     * cached and indexed on its own when the input is set, so no concatenated
+     * label has to be built and scanned.
+     *
+     * @param name Letters and digits only. Case-insensitive.
+     * @param extractor Computes the field's search text of an element.
+     */
+    public void addSearchField(String name, Function<? super T, ? extends CharSequence> extractor) {
+        searchEngine.addSearchField(name, extractor);
+        if (getInput() != null) {
+            getSearchEngine().buildIndexes();
+        }
+    }
+
+    /**
+     * Enables numeric key lookups for items which start with a numeric code,
+     * e.g. {@code "1750 - breeze"}. Typing {@code #1750} shows the item with
+     * code 1750, {@code #1200..1300} all items with codes in that range. The
+     * codes are parsed into a sorted index when the input is set and looked
+     * up by binary search, no label is scanned.
+     *
+     * @param extractor Returns the text the code of an element is parsed
+     *        from (its leading digits), e.g. {@code String::valueOf} for
+     *        "code - name" strings. Elements without leading digits cannot be
+     *        found by code. {@code null} disables numeric lookups.
+     */
+    public void setNumericKeyExtractor(Function<? super T, ? extends CharSequence> extractor) {
+        searchEngine.setNumericKeyExtractor(extractor);
+        if (extractor != null && getInput() != null) {
+            getSearchEngine().buildIndexes();
+        }
+    }
+
+    public Function<? super T, ? extends CharSequence> getNumericKeyExtractor() {
+        return searchEngine.getNumericKeyExtractor();
+    }
+
+    public void removeSearchField(String name) {
+        searchEngine.removeSearchField(name);
+    }
+
+    /**
+     * Shares the search index (search keys, trigram, numeric and field
+     * indexes) with every viewer which is bound to the same input instance
+     * and uses the same registry and an equal version. The first viewer
+     * builds the index, the others only keep their own state like the key
+     * sequence and the selection. Use this for inputs many viewers are bound
+     * to, e.g. a list of countries or currencies.
+     *
+     * <p>
+     * Viewers sharing an index must use the same labels (or search key
+     * extractor), comparator, search fields and numeric key extractor. A
+     * shared index is not rebuilt by {@link #refresh()}, pass a new version
+     * whenever the content of the input changes.
+     * </p>
+     *
+     * @param registry E.g. {@link SearchIndexRegistry#getDefault()}.
+     *        {@code null} stops sharing.
+     * @param version {@code null} if the content of the input never changes.
+     */
+    public void setSharedSearchIndex(SearchIndexRegistry registry, Object version) {
+        this.sharedIndexRegistry = registry;
+        this.sharedIndexVersion = version;
+        dropSearchStructures();
+        if (getInput() != null) {
+            getSearchEngine().buildIndexes();
+        }
+    }
+
+    /**
+     * Sets the input as soon as the given future completes, e.g. a list which
+     * is loaded off the UI thread. The dialog does not have to wait for the
+     * list. Until the input arrives the combo shows a placeholder and ignores
+     * keystrokes, then the first element gets selected (unless empty
+     * selections are allowed) just like with {@link #setInput(Object)}.
+     * Setting another input discards the pending one.
+     *
+     * @param input May be completed on any thread.
+     */
+    public void setDeferredInput(CompletableFuture<?> input) {
+        setDeferredInput(input, null);
+    }
+
+    /**
+     * Loads the input with the given loader on a background thread, see
+     * {@link #setDeferredInput(CompletableFuture)}. A failed load is retried
+     * the next time the combo gains the focus.
+     *
+     * @param loadEagerly If {@code false} loading starts when the combo gains
+     *        the focus for the first time, e.g. when the user clicks it to
+     *        open the drop down.
+     */
+    public void setDeferredInput(Supplier<?> loader, boolean loadEagerly) {
+        if (loadEagerly) {
+            setDeferredInput(loadInput(loader), loader);
+        } else {
+            clearInput();
+            inputLoader = loader;
+            showPlaceholder(LOADING_PLACEHOLDER);
+        }
+    }
+
+    /**
+     * @return {@code true} until the deferred input has been set.
+     */
+    public boolean isLoadingInput() {
+        return pendingInput != null || inputLoader != null;
+    }
+
+    static CompletableFuture<?> loadInput(Supplier<?> loader) {
+        return CompletableFuture.supplyAsync(loader, SearchExecutor::execute);
+    }
+
+    private void setDeferredInput(CompletableFuture<?> input, Supplier<?> loader) {
+        clearInput();
+        pendingInput = input;
+        pendingInputLoader = loader;
+        if (input.isDone()) {
+            applyDeferredInput(input);
+            return;
+        }
+        showPlaceholder(LOADING_PLACEHOLDER);
+        Display display = getControl().getDisplay();
+        input.whenComplete((value, error) -> {
+            if (!display.isDisposed()) {
+                display.asyncExec(() -> applyDeferredInput(input));
+            }
+        });
+    }
+
+    private void startInputLoader() {
+        if (inputLoader != null) {
+            LOGGER.trace("Combo gained focus. Loading deferred input.");
+            Supplier<?> loader = inputLoader;
+            setDeferredInput(loadInput(loader), loader);
+        }
+    }
+
+    private void applyDeferredInput(CompletableFuture<?> input) {
+        if (input != pendingInput || getControl().isDisposed()) {
+            return;
+        }
+        Object value;
+        try {
+            value = input.join();
+        } catch (CompletionException | CancellationException e) {
+            LOGGER.trace("Loading deferred input failed: " + e);
+            pendingInput = null;
+            inputLoader = pendingInputLoader;
+            showPlaceholder(LOADING_FAILED_PLACEHOLDER);
+            return;
+        }
+        getCombo().removeAll();
+        setInput(value);
+    }
+
+    private void clearInput() {
+        if (getInput() != null) {
+            setInput(null);
+        }
+        forgetDeferredInput();
+    }
+
+    private void forgetDeferredInput() {
+        pendingInput = null;
+        pendingInputLoader = null;
+        inputLoader = null;
+        placeholder = null;
+    }
+
+    private void showPlaceholder(String text) {
+        placeholder = text;
+        getCombo().setItems(new String[] { text });
+        getCombo().select(0);
+    }
+
+    /**
+     * @return {@code true} if the combo or its virtual list has the focus.
+     */
+    boolean hasFocus() {
+        return getControl().isFocusControl() || popup != null && popup.hasFocus();
+    }
+
+    /**
+     * @return The selected element or {@code null} if the selection is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T getSelectedElement() {
+        return (T) getStructuredSelection().getFirstElement();
+    }
+
+    @SuppressWarnings("unchecked")
+    private String getSearchKeyText(Object element) {
+        if (searchKeyExtractor != null) {
+            CharSequence key = searchKeyExtractor.apply((T) element);
+            return key == null ? null : key.toString();
+        }
+        IBaseLabelProvider labelProvider = getLabelProvider();
+        if (labelProvider instanceof ILabelProvider) {
+            return ((ILabelProvider) labelProvider).getText(element);
+        }
+        return element == null ? null : element.toString();
+    }
+
+    private void invalidateSearchKeys() {
+        searchEngine.invalidateKeys();
+        dropSearchStructures();
+    }
+
+    private void invalidateSearchKeys(Object[] elements) {
+        searchEngine.invalidateKeys(elements);
+        dropSearchStructures();
+    }
+
+    private void dropSearchStructures() {
+        searchEngine.setElements(null);
+        prefixIndex = null;
+    }
+
+    @Override
+    protected void internalRefresh(Object element, boolean updateLabels) {
+        if (refreshDeferred) {
+            return;
+        }
+        if (pageCache != null) {
+            // the source may have changed
+            pageCache.invalidate();
+            setPagedQuery(pagedQuery);
+            return;
+        }
+        if (element == null || element.equals(getRoot())) {
+            if (moreRowIndex > -1) {
+                listRemove(moreRowIndex);
+                moreRowIndex = -1;
+            }
+            // labels do not change while the filters change, only the visible elements do
+            if (changingFilters && updateItemsIncrementally()) {
+                return;
+            }
+        }
+        prefixIndex = null;
+        try {
+            super.internalRefresh(element, updateLabels);
+        } finally {
+            sortedChildren = null;
+        }
+    }
+
+    /*
+     * Brings the items in line with the filtered and sorted children by
+     * removing and adding single items. Nothing is touched if the visible
+     * elements did not change. Returns false if the items have to be rebuilt
+     * as a whole instead.
+     */
+    private boolean updateItemsIncrementally() {
+
+        if (getInput() == null || getComparator() == null) {
+            // without a comparator added items would be appended
+            return false;
+        }
+
+        Object[] children = getSortedChildren(getRoot());
+        Object[] items = getItemElements();
+
+        if (Arrays.equals(items, children)) {
+            LOGGER.trace("Visible elements did not change. Skipping refresh of " + items.length + " items.");
+            return true;
+        }
+
+        // the children are handed over to the full refresh unless the diff is applied
+        sortedChildren = children;
+
+        Set<Object> itemSet = new HashSet<>(Arrays.asList(items));
+        Set<Object> childSet = new HashSet<>(Arrays.asList(children));
+        if (itemSet.size() != items.length || childSet.size() != children.length) {
+            return false;
+        }
+
+        List<Object> removed = new ArrayList<>();
+        List<Object> kept = new ArrayList<>();
+        for (Object item : items) {
+            if (childSet.contains(item)) {
+                kept.add(item);
+            } else {
+                removed.add(item);
+            }
+        }
+        int addedCount = children.length - kept.size();
+
+        if (removed.size() + addedCount > MAX_INCREMENTAL_ITEM_CHANGES) {
+            LOGGER.trace("Rebuilding items: " + removed.size() + " items removed, " + addedCount + " items added.");
+            return false;
+        }
+
+        // the kept items must stay in the same order
+        List<Object> added = new ArrayList<>();
+        int keptIndex = 0;
+        for (Object child : children) {
+            if (!itemSet.contains(child)) {
+                added.add(child);
+            } else if (!child.equals(kept.get(keptIndex++))) {
+                return false;
+            }
+        }
+
+        LOGGER.trace("Updating items: " + removed.size() + " items removed, " + added.size() + " items added.");
+        prefixIndex = null;
+        remove(removed.toArray());
+        add(added.toArray());
+
+        // the comparator may order equal elements differently than the full sort
+        if (!Arrays.equals(getItemElements(), children)) {
+            return false;
+        }
+
+        sortedChildren = null;
+        return true;
+    }
+
+    private Object[] getItemElements() {
+        Object[] elements = new Object[listGetItemCount()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = getElementAt(i);
+        }
+        return elements;
+    }
+
+    @Override
+    protected Object[] getSortedChildren(Object parent) {
+        if (sortedChildren != null && parent != null && parent.equals(getRoot())) {
+            Object[] children = sortedChildren;
+            sortedChildren = null;
+            return children;
+        }
+        return super.getSortedChildren(parent);
+    }
+
+    /*
+     * The "more" row is not backed by an element. It is taken out while
+     * elements are added or removed, so it stays the last row.
+     */
+    @Override
+    public void add(Object[] elements) {
+        withoutMoreRow(() -> super.add(elements));
+    }
+
+    @Override
+    public void insert(Object element, int position) {
+        withoutMoreRow(() -> super.insert(element, position));
+    }
+
+    @Override
+    public void remove(Object[] elements) {
+        withoutMoreRow(() -> super.remove(elements));
+    }
+
+    private void withoutMoreRow(Runnable runnable) {
+        if (moreRowIndex < 0) {
+            runnable.run();
+            return;
+        }
+        listRemove(moreRowIndex);
+        runnable.run();
+        moreRowIndex = listGetItemCount();
+        listAdd(getMoreRowLabel(), moreRowIndex);
+    }
+
+    @Override
+    public void refresh(Object element) {
+        if (!changingFilters) {
+            invalidateSearchKeys();
+        }
+        super.refresh(element);
+    }
+
+    @Override
+    public void refresh(Object element, boolean updateLabels) {
+        if (!changingFilters && updateLabels) {
+            invalidateSearchKeys();
+        }
+        super.refresh(element, updateLabels);
+    }
+
+    @Override
+    public void update(Object element, String[] properties) {
+        invalidateSearchKeys(new Object[] { element });
+        super.update(element, properties);
+    }
+
+    @Override
+    public void update(Object[] elements, String[] properties) {
+        invalidateSearchKeys(elements);
+        super.update(elements, properties);
+    }
+
+    /*
+     * The matches of a search are already known. The refresh triggered by the
+     * search takes them as they are instead of testing every element of the
+     * input against the filter again.
+     */
+    @Override
+    protected Object[] getFilteredChildren(Object parent) {
+        ViewerFilter[] filters = getFilters();
+        if (filters.length == 1 && filters[0] instanceof MatchesFilter && parent != null
+                && parent.equals(getRoot())) {
+            MatchesFilter filter = (MatchesFilter) filters[0];
+            if (searchEngine.isCurrent(filter.result)) {
+                return filter.elements.clone();
+            }
+        }
+        return super.getFilteredChildren(parent);
+    }
+
+    @Override
+    public void setFilters(ViewerFilter... filters) {
+        long start = startPhase();
+        changingFilters = true;
+        try {
+            super.setFilters(filters);
+        } finally {
+            changingFilters = false;
+            endPhase(Phase.REFRESH, start);
+        }
+    }
+
+    @Override
+    public void resetFilters() {
+        long start = startPhase();
+        changingFilters = true;
+        try {
+            super.resetFilters();
+        } finally {
+            changingFilters = false;
+            endPhase(Phase.REFRESH, start);
+        }
+    }
+
+    @Override
+    public void setComparator(ViewerComparator comparator) {
+        if (!(comparator instanceof RankComparator) && !(getComparator() instanceof RankComparator)) {
+            // the search engine keeps the input in comparator order
+            dropSearchStructures();
+        }
+        long start = startPhase();
+        changingFilters = true;
+        try {
+            super.setComparator(comparator);
+        } finally {
+            changingFilters = false;
+            endPhase(Phase.REFRESH, start);
+        }
+    }
+
+    @Override
+    public void setLabelProvider(IBaseLabelProvider labelProvider) {
+        invalidateSearchKeys();
+        super.setLabelProvider(labelProvider);
+    }
+
+    @Override
+    protected void handleLabelProviderChanged(LabelProviderChangedEvent event) {
+        Object[] elements = event.getElements();
+        if (elements == null) {
+            invalidateSearchKeys();
+        } else {
+            invalidateSearchKeys(elements);
+        }
+        super.handleLabelProviderChanged(event);
+    }
+
+    private ControlDecoration addDecoration(Control control) {
+
+        final ControlDecoration deco = new ControlDecoration(control, SWT.TOP | SWT.LEFT);
+
+        // use an existing image
+        Image image = FieldDecorationRegistry.getDefault().getFieldDecoration(FieldDecorationRegistry.DEC_CONTENT_PROPOSAL)
+                .getImage();
+        deco.setImage(image);
+
+        // @formatter:off
+        deco.setDescriptionText("Type to search...\n" + "\n- Use '" + ESCAPE_CHAR
+                + "' to enable substring filtering:\n" + "    Case-insensitve.\n"
+                + "    '*' can be used as a wildcard.\n" + "- Use '" + ESCAPE_CHAR + ESCAPE_CHAR
+                + "' to enable RegEx filtering:\n" + "    Case-sensitive.\n"
+                + "- Use '" + FUZZY_ESCAPE_CHAR + "' to enable fuzzy search:\n"
+                + "    Case-insensitve, best matches first.\n"
+                + "- Type 'Del' to reset input.");
+        // @formatter:on
+
+        deco.setShowOnlyOnFocus(true);
+        return deco;
+    }
+
+    private void scheduleSearch() {
+        Display display = getControl().getDisplay();
+        if (keystrokeCoalescingDelay > 0) {
+            // reschedules the runnable if it is already pending
+            display.timerExec(keystrokeCoalescingDelay, scheduledSearch);
+        } else if (!searchScheduled) {
+            // async runnables are executed after the pending key events
+            display.asyncExec(scheduledSearch);
+        }
+        searchScheduled = true;
+    }
+
+    private void cancelScheduledSearch() {
+        if (searchScheduled) {
+            searchScheduled = false;
+            if (keystrokeCoalescingDelay > 0) {
+                getControl().getDisplay().timerExec(-1, scheduledSearch);
+            }
+        }
+    }
+
+    /*
+     * Evaluates the key sequence collected since the last search.
+     */
+    private void runScheduledSearch() {
+
+        if (!searchScheduled || getControl().isDisposed()) {
+            return;
+        }
+        searchScheduled = false;
+
+        if (keySequence.isEmpty()) {
+            return;
+        }
+
+        // paged mode: the source filters
+        if (pageCache != null) {
+            startMeasurement(Mode.PAGED);
+            setListVisible(true);
+            pagedSearch();
+            return;
+        }
+
+        // numeric key lookup
+        if (keySequence.charAt(0) == NUMERIC_ESCAPE_CHAR && searchEngine.getNumericKeyExtractor() != null) {
+            startMeasurement(Mode.NUMERIC);
+            setListVisible(true);
+            numericSearchAndFilter();
+            // fuzzy search and filter
+        } else if (keySequence.charAt(0) == FUZZY_ESCAPE_CHAR) {
+            startMeasurement(Mode.FUZZY);
+            setListVisible(true);
+            fuzzySearchAndFilter();
+            // regex search and filter
+        } else if (keySequence.startsWith(String.valueOf(ESCAPE_CHAR) + String.valueOf(ESCAPE_CHAR))) {
+            startMeasurement(Mode.REGEX);
+            setListVisible(true);
+            regexSearchAndFilter();
+            // substring search and filter
+        } else if (keySequence.startsWith(String.valueOf(ESCAPE_CHAR))) {
+            startMeasurement(Mode.SUBSTRING);
+            setListVisible(true);
+            substrSearchAndFilter();
+            // field search and filter
+        } else if (getQueriedField() != null) {
+            startMeasurement(Mode.FIELD);
+            setListVisible(true);
+            fieldSearchAndFilter();
+        } else {
+            // uncomment to enable workaround Eclipse Bug #222752
+            //
+            //setListVisible(false);
+            //standardSearch();
+            //setListVisible(true);
+
+            startMeasurement(Mode.STANDARD);
+            setListVisible(true);
+            standardSearch();
+        }
+    }
+
+    protected void regexSearchAndFilter() {
+
+        LOGGER.trace("Executing regex search and filter function. keySequence is >" + keySequence + "<");
+
+        // remove ESCAPE_CHAR
+        final CompiledQuery query = MatchStrategy.REGEX.compile(keySequence.substring(2));
+        LOGGER.trace("regex filter pattern: >" + query.getText() + "<");
+
+        forgetLastQuery();
+        evaluate(query, this::applyRegexResult);
+    }
+
+    private void applyRegexResult(FilterResult result) {
+
+        if (!result.getQuery().isValid()) {
+            setFilters(createShowAllFilter());
+            toolTip.setText(keySequence + " (RegEx-Suche - ung\u00fcltiger Ausdruck: "
+                    + result.getQuery().getErrorMessage() + ". Zeige alle " + result.getElementCount()
+                    + " Elemente)");
+        } else if (result.isBudgetExceeded()) {
+            LOGGER.trace("Regex evaluation exceeded step budget of " + searchEngine.getRegexStepsPerChar()
+                    + " steps per char. Query abandoned.");
+            setFilters(createShowAllFilter());
+            toolTip.setText(keySequence
+                    + " (RegEx-Suche - Ausdruck zu aufwendig, Auswertung wurde abgebrochen. Zeige alle "
+                    + result.getElementCount() + " Elemente)");
+        } else if (result.getMatchCount() == 0) {
+            setFilters(createShowAllFilter());
+            toolTip.setText(keySequence
+                    + " (RegEx-Suche - Filter liefert KEINE Ergebnisse und wurde daher deaktiviert. Zeige alle "
+                    + result.getElementCount() + " Elemente)");
+        } else {
+            showMatches(result);
+        }
+
+        showToolTip();
+        setSelectedComboItem(0);
+        finishMeasurement(result);
+    }
+
+    protected void substrSearchAndFilter() {
+
+        LOGGER.trace("Executing substring search and filter function. keySequence is >" + keySequence + "<");
+
+        // remove ESCAPE_CHAR
+        final CompiledQuery query = MatchStrategy.SUBSTRING.compile(keySequence.substring(1));
+        LOGGER.trace("substring filter pattern: >" + query.getText() + "<");
+
+        evaluate(query, this::applySubstringResult);
+    }
+
+    protected void fieldSearchAndFilter() {
+
+        LOGGER.trace("Executing field search and filter function. keySequence is >" + keySequence + "<");
+
+        String field = getQueriedField();
+        // remove field name and ESCAPE_CHAR
+        final CompiledQuery query = CompiledQuery.substring(field, keySequence.substring(field.length() + 1));
+        LOGGER.trace("field filter pattern: >" + query.getText() + "< (field " + field + ")");
+
+        evaluate(query, this::applySubstringResult);
+    }
+
+    /*
+     * The registered field the key sequence starts with (followed by
+     * ESCAPE_CHAR) or null.
+     */
+    private String getQueriedField() {
+        int separator = keySequence.indexOf(ESCAPE_CHAR);
+        if (separator < 1) {
+            return null;
+        }
+        String field = keySequence.substring(0, separator);
+        return searchEngine.hasSearchField(field) ? field : null;
+    }
+
+    private void applySubstringResult(FilterResult result) {
+
+        searchEngine.remember(result);
+
+        if (result.getMatchCount() == 0) {
+            setFilters(createShowAllFilter());
+            toolTip.setText(keySequence
+                    + " (" + getSearchName(result.getQuery())
+                    + " - Filter liefert keine Ergebnisse und wurde daher deaktiviert. Zeige alle "
+                    + result.getElementCount() + " Elemente.)");
+        } else {
+            showMatches(result);
+        }
+
+        showToolTip();
+        setSelectedComboItem(0);
+        finishMeasurement(result);
+    }
+
+    protected void numericSearchAndFilter() {
+
+        LOGGER.trace("Executing numeric search and filter function. keySequence is >" + keySequence + "<");
+
+        // remove NUMERIC_ESCAPE_CHAR
+        final CompiledQuery query = MatchStrategy.NUMERIC.compile(keySequence.substring(1));
+        LOGGER.trace("numeric key range: >" + query.getText() + "<");
+
+        cancelPendingSearch();
+        forgetLastQuery();
+
+        // a lookup in the sorted index, fast enough for the UI thread
+        long start = startPhase();
+        FilterResult result = getSearchEngine().prepare(query, Integer.MAX_VALUE).apply(() -> false);
+        endPhase(Phase.MATCH, start);
+        applyNumericResult(result);
+    }
+
+    private void applyNumericResult(FilterResult result) {
+
+        if (!result.getQuery().isValid()) {
+            setFilters(createShowAllFilter());
+            toolTip.setText(keySequence + " (Schl\u00fcsselsuche - ung\u00fcltige Eingabe: "
+                    + result.getQuery().getErrorMessage() + ". Zeige alle " + result.getElementCount()
+                    + " Elemente)");
+        } else if (result.getMatchCount() == 0) {
+            setFilters(createShowAllFilter());
+            toolTip.setText(keySequence + " (Schl\u00fcsselsuche - Filter liefert keine Ergebnisse und wurde"
+                    + " daher deaktiviert. Zeige alle " + result.getElementCount() + " Elemente)");
+        } else {
+            showMatches(result);
+        }
+
+        showToolTip();
+        setSelectedComboItem(0);
+        finishMeasurement(result);
+    }
+
+    protected void fuzzySearchAndFilter() {
+
+        LOGGER.trace("Executing fuzzy search and filter function. keySequence is >" + keySequence + "<");
+
+        // remove FUZZY_ESCAPE_CHAR
+        final CompiledQuery query = MatchStrategy.fuzzy(fuzzyResultLimit).compile(keySequence.substring(1));
+        LOGGER.trace("fuzzy filter pattern: >" + query.getText() + "<");
+
+        forgetLastQuery();
+        evaluate(query, this::applyFuzzyResult);
+    }
+
+    private void applyFuzzyResult(FilterResult result) {
+
+        if (result.getMatchCount() == 0) {
+            restoreComparatorAfterFuzzySearch();
+            setFilters(createShowAllFilter());
+            toolTip.setText(keySequence
+                    + " (Fuzzy-Suche - Filter liefert keine Ergebnisse und wurde daher deaktiviert. Zeige alle "
+                    + result.getElementCount() + " Elemente)");
+        } else {
+            RankComparator rankComparator;
+            if (getComparator() instanceof RankComparator) {
+                rankComparator = (RankComparator) getComparator();
+            } else {
+                comparatorBeforeFuzzySearch = getComparator();
+                rankComparator = new RankComparator();
+            }
+            rankComparator.setRanking(result.getMatchedElements());
+            ViewerFilter matchesFilter = createMatchesFilter(result);
+            if (getComparator() != rankComparator) {
+                refreshDeferred = true;
+                try {
+                    setComparator(rankComparator);
+                } finally {
+                    refreshDeferred = false;
+                }
+            }
+            // the only refresh, it sorts the best matches by their ranks
+            setFilters(matchesFilter);
+            toolTip.setText(keySequence + " (Fuzzy-Suche - zeige die besten " + result.getMatchCount() + " von "
+                    + result.getTotalMatchCount() + " Treffern)");
+        }
+
+        showToolTip();
+        setSelectedComboItem(0);
+        finishMeasurement(result);
+    }
+
+    /*
+     * Shows the first window of matches of a substring or regex query and
+     * counts the remaining matches lazily.
+     */
+    private void showMatches(FilterResult result) {
+        shownResult = result;
+        shownMatchCount = Math.min(result.getMatchCount(), resultWindowSize);
+        showMatchWindow();
+        if (!result.isComplete()) {
+            countRemainingMatches(result);
+        }
+    }
+
+    /*
+     * Extends the shown matches by another window. Called when the user
+     * selects the "more" row.
+     */
+    private void showMoreMatches() {
+
+        int firstNewMatch = shownMatchCount;
+        int wanted = (int) Math.min(Integer.MAX_VALUE, (long) shownMatchCount + resultWindowSize);
+
+        if (shownResult.getMatchCount() <= wanted && !shownResult.isComplete()) {
+            // the background count has not got that far yet
+            shownResult = shownResult.resume(wanted, searchEngine.getRegexStepsPerChar(),
+                    searchEngine.getParallelMatchingThreshold(), () -> false);
+        }
+
+        LOGGER.trace("Showing more matches. Extending window from " + shownMatchCount + " to " + wanted
+                + " matches.");
+        shownMatchCount = Math.min(shownResult.getMatchCount(), wanted);
+        showMatchWindow();
+        showToolTip();
+        setSelectedComboItem(firstNewMatch);
+    }
+
+    private void showMatchWindow() {
+        setFilters(createMatchesFilter(shownResult, shownMatchCount));
+        if (hasMoreMatches()) {
+            moreRowIndex = listGetItemCount();
+            listAdd(getMoreRowLabel(), moreRowIndex);
+        }
+        toolTip.setText(describeShownMatches());
+    }
+
+    private boolean hasMoreMatches() {
+        return shownResult != null && (shownMatchCount < shownResult.getMatchCount()
+                || !shownResult.isComplete() && !shownResult.isBudgetExceeded());
+    }
+
+    private String getMoreRowLabel() {
+        if (shownResult.isComplete()) {
+            return "\u2026 " + (shownResult.getMatchCount() - shownMatchCount) + " weitere Treffer";
+        }
+        return "\u2026 weitere Treffer";
+    }
+
+    private String describeShownMatches() {
+
+        String search = getSearchName(shownResult.getQuery());
+        int elementCount = shownResult.getElementCount();
+
+        if (!hasMoreMatches()) {
+            return keySequence + " (" + search + " - zeige " + shownMatchCount + " von " + elementCount
+                    + " Elementen)";
+        }
+
+        String matchCount = shownResult.isComplete() ? String.valueOf(shownResult.getMatchCount())
+                : "mindestens " + shownResult.getMatchCount();
+        return keySequence + " (" + search + " - zeige die ersten " + shownMatchCount + " von " + matchCount
+                + " Treffern aus " + elementCount + " Elementen)";
+    }
+
+    private static String getSearchName(CompiledQuery query) {
+        if (query.getMode() == CompiledQuery.Mode.REGEX) {
+            return "RegEx-Suche";
+        }
+        if (query.getMode() == CompiledQuery.Mode.NUMERIC) {
+            return "Schl\u00fcsselsuche";
+        }
+        return query.getField() == null ? "Substringsuche" : "Suche in Feld " + query.getField();
+    }
+
+    private void forgetShownMatches() {
+        shownResult = null;
+        shownMatchCount = 0;
+        moreRowIndex = -1;
+    }
+
+    private void restoreComparatorAfterFuzzySearch() {
+        if (getComparator() instanceof RankComparator) {
+            setComparator(comparatorBeforeFuzzySearch);
+            comparatorBeforeFuzzySearch = null;
+        }
+    }
+
+    /*
+     * Evaluates the query either right away or, in async mode, on a background
+     * thread. The result handler is always called on the UI thread.
+     */
+    private void evaluate(CompiledQuery query, Consumer<FilterResult> resultHandler) {
+        cancelPendingSearch();
+
+        final Function<BooleanSupplier, FilterResult> search = getSearchEngine().prepare(query, resultWindowSize);
+        final SearchMeasurement searchMeasurement = measurement;
+        Function<BooleanSupplier, FilterResult> evaluation = cancelled -> {
+            long start = searchMeasurement == null ? 0L : System.nanoTime();
+            FilterResult result = search.apply(cancelled);
+            if (searchMeasurement != null) {
+                searchMeasurement.addNanos(Phase.MATCH, System.nanoTime() - start);
+            }
+            return result;
+        };
+
+        if (asyncFiltering) {
+            pendingSearch = new AsyncSearch(query, evaluation, resultHandler);
+            SearchExecutor.execute(pendingSearch);
+        } else {
+            resultHandler.accept(evaluation.apply(() -> false));
+        }
+    }
+
+    /*
+     * Finds the matches of an incomplete result on a background thread, even
+     * if async filtering is disabled. The first matches are already shown.
+     */
+    private void countRemainingMatches(final FilterResult result) {
+        cancelPendingSearch();
+
+        final long stepsPerChar = searchEngine.getRegexStepsPerChar();
+        final int parallelThreshold = searchEngine.getParallelMatchingThreshold();
+
+        LOGGER.trace("Counting remaining matches of query >" + result.getQuery().getText() + "< in background.");
+        pendingSearch = new AsyncSearch(result.getQuery(),
+                cancelled -> result.resume(Integer.MAX_VALUE, stepsPerChar, parallelThreshold, cancelled),
+                this::applyRemainingMatches);
+        SearchExecutor.execute(pendingSearch);
+    }
+
+    private void applyRemainingMatches(FilterResult result) {
+
+        if (result.isBudgetExceeded()) {
+            LOGGER.trace("Counting remaining matches exceeded step budget of "
+                    + searchEngine.getRegexStepsPerChar() + " steps per char.");
+        }
+
+        // a superset of the current matches, the shown matches do not change
+        shownResult = result;
+        searchEngine.remember(result);
+
+        if (moreRowIndex > -1) {
+            if (hasMoreMatches()) {
+                listSetItem(moreRowIndex, getMoreRowLabel());
+            } else {
+                listRemove(moreRowIndex);
+                moreRowIndex = -1;
+            }
+        }
+
+        toolTip.setText(describeShownMatches());
+        showToolTip();
+    }
+
+    private void cancelPendingSearch() {
+        if (pendingSearch != null) {
+            LOGGER.trace("Cancelling evaluation of query >" + pendingSearch.query.getText() + "<");
+            pendingSearch.cancelled = true;
+            pendingSearch = null;
+        }
+    }
+
+    /*
+     * The search engine with the input in comparator order. The first matches
+     * in search order are the first matches in comparator order.
+     */
+    private SearchEngine<T> getSearchEngine() {
+        if (!searchEngine.hasElements()) {
+            if (sharedIndexRegistry != null && getInput() != null) {
+                searchEngine.setIndex(sharedIndexRegistry.getIndex(getInput(), sharedIndexVersion,
+                        () -> searchEngine.createIndex(getSortedInput())));
+            } else {
+                searchEngine.setElements(getSortedInput());
+            }
+        }
+        return searchEngine;
+    }
+
+    private Object[] getSortedInput() {
+        Object[] elements = getRawChildren(getInput()).clone();
+        ViewerComparator comparator = getComparator() instanceof RankComparator ? comparatorBeforeFuzzySearch
+                : getComparator();
+        if (comparator != null) {
+            comparator.sort(this, elements);
+        }
+        return elements;
+    }
+
+    private ViewerFilter createMatchesFilter(FilterResult result) {
+        return createMatchesFilter(result, result.getMatchCount());
+    }
+
+    /*
+     * Only the first limit matches pass the filter.
+     */
+    private ViewerFilter createMatchesFilter(FilterResult result, int limit) {
+        return new MatchesFilter(result, result.getMatchedElements(limit));
+    }
+
+    private ViewerFilter createShowAllFilter() {
+        return new ViewerFilter() {
+            @Override
+            public boolean select(Viewer viewer, Object parentElement, Object element) {
+                return true;
+            }
+        };
+    }
+
+    protected void standardSearch() {
+
+        LOGGER.trace("Executing standard search function. keySequence is >" + keySequence + "<");
+
+        toolTip.setText(keySequence + " (Element " + getSelectionIndex() + " von " + listGetItemCount()
+                + " selektiert)");
+        showToolTip();
+
+        long start = startPhase();
+        int indexOfSelection = getPrefixIndex().firstMatch(keySequence.toLowerCase());
+        endPhase(Phase.MATCH, start);
+
+        if (indexOfSelection > -1) {
+            setSelectedComboItem(indexOfSelection);
+        }
+        finishMeasurement(listGetItemCount(), 0, indexOfSelection > -1 ? 1 : 0);
+    }
+
+    private PrefixIndex getPrefixIndex() {
+        if (prefixIndex == null) {
+            prefixIndex = searchEngine.createPrefixIndex(getSortedChildren(getRoot()));
+        }
+        return prefixIndex;
+    }
+
+    protected void setSelectedComboItem(int indexOfSelection) {
+        if (moreRowIndex > -1 && indexOfSelection == moreRowIndex) {
+            showMoreMatches();
+        } else if (indexOfSelection < listGetItemCount() && indexOfSelection > -1) {
+            LOGGER.trace("Selecting item at index " + indexOfSelection);
+            long start = startPhase();
+            // Set structured selection to fire event for viewer binding.
+            Object elementAt = getElementAt(indexOfSelection);
+            if (elementAt == null) {
+                // a paged source returned less items than it counted
+                return;
+            }
+            setSelection(new StructuredSelection(elementAt));
+            endPhase(Phase.SELECTION, start);
+        } else {
+            LOGGER.trace("Not updating selection. Combo has " + listGetItemCount()
+                    + " items at the moment. Request was to select item at index " + indexOfSelection + ".");
+        }
+    }
+
+    private void showToolTip() {
+        long start = startPhase();
+        if (sharedToolTip) {
+            // the shared tooltip is attached to the shell
+            Control control = getControl();
+            toolTip.show(control.getShell().toControl(control.toDisplay(toolTipLocation)));
+        } else {
+            toolTip.show(toolTipLocation);
+        }
+        endPhase(Phase.TOOLTIP, start);
+    }
+
+    /*
+     * Metrics: a measurement is only taken if a listener is set. Otherwise
+     * the phase timers do not even read the clock.
+     */
+    private void startMeasurement(Mode mode) {
+        measurement = metricsListener == SearchMetricsListener.NONE ? null
+                : new SearchMeasurement(mode, System.nanoTime());
+    }
+
+    private long startPhase() {
+        return measurement == null ? 0L : System.nanoTime();
+    }
+
+    private void endPhase(Phase phase, long start) {
+        if (measurement != null) {
+            measurement.addNanos(phase, System.nanoTime() - start);
+        }
+    }
+
+    private void finishMeasurement(FilterResult result) {
+        finishMeasurement(result.getElementCount(), result.getTestedCount(), result.getMatchCount());
+    }
+
+    private void finishMeasurement(int inputSize, int itemsScanned, int matchCount) {
+        if (measurement != null) {
+            SearchMeasurement finished = measurement;
+            measurement = null;
+            finished.finish(System.nanoTime(), inputSize, itemsScanned, matchCount);
+            metricsListener.searchCompleted(finished);
+        }
+    }
+
+    private void forgetLastQuery() {
+        searchEngine.forgetLastQuery();
+    }
+
+    protected void resetComboFiltersAndHideTooltip() {
+        cancelScheduledSearch();
+        cancelPendingSearch();
+        measurement = null;
+        forgetLastQuery();
+        setListVisible(false);
+        restoreComparatorAfterFuzzySearch();
+        forgetShownMatches();
+        if (getFilters().length > 0) {
+            resetFilters();
+        }
+        if (pageCache != null && !pagedQuery.isEmpty()) {
+            setPagedQuery("");
+        }
+        toolTip.setText("");
+        toolTip.hide();
+    }
+
+    /*
+     * Lets the matches of a search pass. The match set is only needed if
+     * single elements are filtered, e.g. when elements are added.
+     */
+    private static final class MatchesFilter extends ViewerFilter {
+
+        private final FilterResult result;
+        private final Object[] elements;
+        private Set<Object> matchSet;
+
+        MatchesFilter(FilterResult result, Object[] elements) {
+            this.result = result;
+            this.elements = elements;
+        }
+
+        @Override
+        public boolean select(Viewer viewer, Object parentElement, Object element) {
+            if (matchSet == null) {
+                matchSet = new HashSet<>(Arrays.asList(elements));
+            }
+            return matchSet.contains(element);
+        }
+    }
+
+    /*
+     * Orders the elements matched by a fuzzy search by relevance.
+     */
+    private static final class RankComparator extends ViewerComparator {
+
+        private final Map<Object, Integer> ranks = new HashMap<>();
+
+        /**
+         * @param elements The matches, best match first.
+         */
+        void setRanking(Object[] elements) {
+            ranks.clear();
+            for (int i = 0; i < elements.length; i++) {
+                ranks.putIfAbsent(elements[i], i);
+            }
+        }
+
+        @Override
+        public int compare(Viewer viewer, Object e1, Object e2) {
+            return Integer.compare(rank(e1), rank(e2));
+        }
+
+        private int rank(Object element) {
+            Integer rank = ranks.get(element);
+            return rank == null ? Integer.MAX_VALUE : rank;
+        }
+    }
+
+    private final class BorderPaintListener implements PaintListener {
+        @Override
+        public void paintControl(PaintEvent event) {
+            GC gc = event.gc;
+            gc.setLineWidth(8);
+            gc.setForeground(Display.getCurrent().getSystemColor(SWT.COLOR_DARK_GREEN));
+            gc.drawRectangle(getControl().getShell().getClientArea().x, getControl().getShell().getClientArea().y,
+                    getControl().getBounds().width, getControl().getBounds().height);
+        }
+    }
+
+    /*
+     * Evaluates a query on a background thread and hands the result over to
+     * the UI thread unless a newer query was started in the meantime.
+     */
+    private final class AsyncSearch implements Runnable {
+
+        private final CompiledQuery query;
+        private final Function<BooleanSupplier, FilterResult> evaluation;
+        private final Consumer<FilterResult> resultHandler;
+        private final Display display = getControl().getDisplay();
+
+        private volatile boolean cancelled;
+
+        /**
+         * @param evaluation Called on the background thread with the
+         *        cancellation flag.
+         */
+        AsyncSearch(CompiledQuery query, Function<BooleanSupplier, FilterResult> evaluation,
+                Consumer<FilterResult> resultHandler) {
+            this.query = query;
+            this.evaluation = evaluation;
+            this.resultHandler = resultHandler;
+        }
+
+        @Override
+        public void run() {
+            final FilterResult result;
+            try {
+                result = evaluation.apply(() -> cancelled);
+            } catch (CancellationException e) {
+                return;
+            }
+
+            if (cancelled || display.isDisposed()) {
+                return;
+            }
+
+            display.asyncExec(() -> {
+                // cancelled and pendingSearch are only modified on the UI thread
+                if (!cancelled && pendingSearch == this && !getControl().isDisposed()) {
+                    pendingSearch = null;
+                    resultHandler.accept(result);
+                }
+            });
+        }
+    }
+
+    private class CustomKeyAdapter extends KeyAdapter {
+
+        /*
+         * keySequence whitelist characters: We WANT these chars to modify the
+         * keySequence and initiate a search / filtering operation.
+         */
+        private boolean isSearchChar(char character) {
+            return Character.isLetterOrDigit(character) || ",;.:-_+*~# ".contains(Character.toString(character));
+        }
+
+        @Override
+        public void keyPressed(KeyEvent keyEvent) {
+
+            LOGGER.trace("Received key event: >" + keyEvent.character + "<");
+            LOGGER.trace("keySequence before processing key event is: >" + keySequence + "<");
+
+            if (placeholder != null) {
+                LOGGER.trace("Input is not loaded yet. Ignoring key event.");
+                keyEvent.doit = false;
+                return;
+            }
+
+            if (virtualPopup && handleVirtualListKey(keyEvent)) {
+                return;
+            }
+
+            if (keyEvent.keyCode == SWT.DEL) {
+                LOGGER.trace("User requested to delete any input and reset filter state.");
+                keySequence = "";
+                resetComboFiltersAndHideTooltip();
+            } else if ((keyEvent.stateMask & SWT.MOD1) != 0 && keyEvent.keyCode == 'v') {
+                pasteIntoKeySequence(keyEvent);
+            } else if (isSearchChar(keyEvent.character) || keyEvent.keyCode == SWT.BS) {
+                applySearchAndFilterOperation(keyEvent, (Combo) keyEvent.widget);
+            }
+
+            LOGGER.trace("keySequence after processing key event is: >" + keySequence + "<");
+        }
+
+        /*
+         * Emulates the list navigation of a native R/O combo for the virtual
+         * list. Returns true if the key event was consumed.
+         */
+        private boolean handleVirtualListKey(KeyEvent keyEvent) {
+
+            boolean listVisible = isListVisible();
+            int itemCount = listGetItemCount();
+            int index = getSelectionIndex();
+            int pageSize = VirtualListPopup.VISIBLE_ITEM_COUNT;
+
+            switch (keyEvent.keyCode) {
+            case SWT.F4:
+                setListVisible(!listVisible);
+                break;
+            case SWT.ARROW_DOWN:
+                if ((keyEvent.stateMask & SWT.ALT) != 0) {
+                    setListVisible(!listVisible);
+                } else {
+                    setSelectedComboItem(Math.min(index + 1, itemCount - 1));
+                }
+                break;
+            case SWT.ARROW_UP:
+                if ((keyEvent.stateMask & SWT.ALT) != 0) {
+                    setListVisible(!listVisible);
+                } else {
+                    setSelectedComboItem(Math.max(index - 1, 0));
+                }
+                break;
+            case SWT.PAGE_DOWN:
+                setSelectedComboItem(Math.min(index + pageSize, itemCount - 1));
+                break;
+            case SWT.PAGE_UP:
+                setSelectedComboItem(Math.max(index - pageSize, 0));
+                break;
+            case SWT.HOME:
+                setSelectedComboItem(0);
+                break;
+            case SWT.END:
+                setSelectedComboItem(itemCount - 1);
+                break;
+            case SWT.CR:
+            case SWT.ESC:
+                if (!listVisible) {
+                    return false;
+                }
+                setListVisible(false);
+                break;
+            default:
+                return false;
+            }
+
+            keyEvent.doit = false;
+            return true;
+        }
+
+        /*
+         * Appends the whitelisted chars of the clipboard text to the key
+         * sequence. The whole paste is evaluated as one query.
+         */
+        private void pasteIntoKeySequence(KeyEvent keyEvent) {
+
+            Clipboard clipboard = new Clipboard(keyEvent.display);
+            String text;
+            try {
+                text = (String) clipboard.getContents(TextTransfer.getInstance());
+            } finally {
+                clipboard.dispose();
+            }
+
+            if (text == null) {
+                return;
+            }
+
+            StringBuilder pasted = new StringBuilder();
+            for (char character : text.toCharArray()) {
+                if (isSearchChar(character)) {
+                    pasted.append(character);
+                }
+            }
+
+            LOGGER.trace("Pasting >" + pasted + "< into key sequence.");
+            keyEvent.doit = false;
+
+            if (pasted.length() > 0) {
+                keySequence += pasted;
+                scheduleSearch();
+            }
+        }
+
+        protected void applySearchAndFilterOperation(KeyEvent keyEvent, Combo combo) {
+
+            if (keyEvent.keyCode == SWT.BS && !keySequence.isEmpty()) {
 
                 LOGGER.trace("Removing last char from key sequence.");
                 keySequence = keySequence.substring(0, keySequence.length() - 1);
@@ -388,24 +2272,7 @@ public class ExtendedComboViewer extends ComboViewer {
                 keySequence += Character.toString(keyEvent.character);
             }
 
-            // regex search and filter
-            if (keySequence.startsWith(String.valueOf(ESCAPE_CHAR) + String.valueOf(ESCAPE_CHAR))) {
-                combo.setListVisible(true);
-                regexSearchAndFilter();
-                // substring search and filter
-            } else if (keySequence.startsWith(String.valueOf(ESCAPE_CHAR))) {
-                combo.setListVisible(true);
-                substrSearchAndFilter();
-            } else {
-                // uncomment to enable workaround Eclipse Bug #222752
-                //
-            	//combo.setListVisible(false);
-                //standardSearch();
-                //combo.setListVisible(true);
-            	
-            	combo.setListVisible(true);
-            	standardSearch();
-            }
+            scheduleSearch();
         }
 
     }
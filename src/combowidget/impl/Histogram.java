@@ -0,0 +1,135 @@
+package combowidget.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative long values (e.g. nanoseconds or item
+ * counts). Recording is a few atomic increments and never blocks, so it can be
+ * called on the UI thread for every search.
+ *
+ * <p>
+ * Values are counted in logarithmic buckets: each power of two is split into
+ * four buckets, so percentiles are accurate to 25%. Use {@link #snapshot()}
+ * to read the recorded values.
+ * </p>
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    /**
+     * @param value Negative values are recorded as {@code 0}.
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(bucketIndex(v));
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new Snapshot(counts, sum.sum(), max.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        sum.reset();
+        max.reset();
+    }
+
+    private static int bucketIndex(long value) {
+        int bits = 64 - Long.numberOfLeadingZeros(value);
+        if (bits <= SUB_BUCKET_BITS) {
+            return (int) value;
+        }
+        int subBucket = (int) (value >>> (bits - 1 - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((bits - SUB_BUCKET_BITS) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    private static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int group = index >>> SUB_BUCKET_BITS;
+        int subBucket = index & (SUB_BUCKETS - 1);
+        return (long) (SUB_BUCKETS + subBucket) << (group - 1);
+    }
+
+    /**
+     * Copy of the recorded values. Values recorded while the copy is taken
+     * may or may not be included.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long sum, long max) {
+            this.counts = counts;
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.count = total;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile E.g. {@code 99.9}.
+         * @return The upper bound of the bucket which contains the value at
+         *         the given percentile (never more than the maximum) or
+         *         {@code 0} if nothing was recorded.
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    long upperBound = i + 1 < counts.length ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(upperBound, max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + (long) getMean() + ", p50=" + getPercentile(50) + ", p90="
+                    + getPercentile(90) + ", p99=" + getPercentile(99) + ", max=" + max;
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package combowidget.impl;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import combowidget.impl.SearchMeasurement.Mode;
+import combowidget.impl.SearchMeasurement.Phase;
+
+/**
+ * Collects the measurements of one or more viewers in lock-free
+ * {@link Histogram}s. Can be shared by all combos of an application; export
+ * e.g. {@code getTotalNanos().snapshot().getPercentile(99)} periodically.
+ */
+public final class HistogramSearchMetrics implements SearchMetricsListener {
+
+    private final Histogram totalNanos = new Histogram();
+    private final Map<Phase, Histogram> phaseNanos = new EnumMap<>(Phase.class);
+    private final Histogram inputSize = new Histogram();
+    private final Histogram itemsScanned = new Histogram();
+    private final Histogram matchCount = new Histogram();
+    private final Map<Mode, LongAdder> searchCounts = new EnumMap<>(Mode.class);
+
+    public HistogramSearchMetrics() {
+        for (Phase phase : Phase.values()) {
+            phaseNanos.put(phase, new Histogram());
+        }
+        for (Mode mode : Mode.values()) {
+            searchCounts.put(mode, new LongAdder());
+        }
+    }
+
+    @Override
+    public void searchCompleted(SearchMeasurement measurement) {
+        totalNanos.record(measurement.getTotalNanos());
+        for (Phase phase : Phase.values()) {
+            phaseNanos.get(phase).record(measurement.getNanos(phase));
+        }
+        inputSize.record(measurement.getInputSize());
+        itemsScanned.record(measurement.getItemsScanned());
+        matchCount.record(measurement.getMatchCount());
+        searchCounts.get(measurement.getMode()).increment();
+    }
+
+    /**
+     * @return Time per search from the keystroke until the result is shown.
+     */
+    public Histogram getTotalNanos() {
+        return totalNanos;
+    }
+
+    public Histogram getPhaseNanos(Phase phase) {
+        return phaseNanos.get(phase);
+    }
+
+    public Histogram getInputSize() {
+        return inputSize;
+    }
+
+    public Histogram getItemsScanned() {
+        return itemsScanned;
+    }
+
+    public Histogram getMatchCount() {
+        return matchCount;
+    }
+
+    public long getSearchCount(Mode mode) {
+        return searchCounts.get(mode).sum();
+    }
+
+    public void reset() {
+        totalNanos.reset();
+        for (Histogram histogram : phaseNanos.values()) {
+            histogram.reset();
+        }
+        inputSize.reset();
+        itemsScanned.reset();
+        matchCount.reset();
+        for (LongAdder searchCount : searchCounts.values()) {
+            searchCount.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("total: ").append(totalNanos.snapshot()).append('\n');
+        for (Phase phase : Phase.values()) {
+            sb.append(phase).append(": ").append(phaseNanos.get(phase).snapshot()).append('\n');
+        }
+        sb.append("items scanned: ").append(itemsScanned.snapshot()).append('\n');
+        sb.append("matches: ").append(matchCount.snapshot()).append('\n');
+        sb.append("searches: ").append(searchCounts);
+        return sb.toString();
+    }
+
+}
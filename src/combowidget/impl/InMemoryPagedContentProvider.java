@@ -0,0 +1,92 @@
+package combowidget.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import combowidget.engine.CompiledQuery;
+import combowidget.engine.FilterResult;
+import combowidget.engine.MatchStrategy;
+import combowidget.engine.SearchEngine;
+
+/**
+ * Paged content provider over an in-memory list, a stand-in for a real item
+ * source (e.g. a database) in tests and playgrounds.
+ *
+ * <p>
+ * Queries are interpreted like the viewer does: {@code ::} starts a RegEx,
+ * {@code :} a substring search, everything else is matched as prefix of the
+ * search key. The matches of the last query are kept, so counting and
+ * fetching the pages of a query only match the items once. The number of
+ * fetches is counted, e.g. to check the page cache.
+ * </p>
+ */
+public class InMemoryPagedContentProvider<T> implements PagedContentProvider<T> {
+
+    private final Object[] items;
+    private final SearchEngine<T> searchEngine;
+
+    private String lastQuery;
+    private Object[] lastMatches;
+
+    private int fetchCount;
+
+    /**
+     * @param keyFunction Computes the text the queries are matched against,
+     *        e.g. the label.
+     */
+    public InMemoryPagedContentProvider(List<? extends T> items,
+            Function<? super T, ? extends CharSequence> keyFunction) {
+        this.items = items.toArray();
+        this.searchEngine = new SearchEngine<>(keyFunction);
+        this.searchEngine.setElements(this.items);
+    }
+
+    @Override
+    public int getItemCount(String query) {
+        return getMatches(query).length;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<? extends T> getItems(String query, int offset, int limit) {
+        fetchCount++;
+        Object[] matches = getMatches(query);
+        if (offset >= matches.length) {
+            return Collections.emptyList();
+        }
+        Object[] page = Arrays.copyOfRange(matches, offset, Math.min(matches.length, offset + limit));
+        return (List<? extends T>) Arrays.asList(page);
+    }
+
+    /**
+     * @return The number of {@link #getItems(String, int, int)} calls so far.
+     */
+    public int getFetchCount() {
+        return fetchCount;
+    }
+
+    private Object[] getMatches(String query) {
+        if (query.isEmpty()) {
+            return items;
+        }
+        if (!query.equals(lastQuery)) {
+            CompiledQuery compiledQuery = compile(query);
+            FilterResult result = compiledQuery.isValid() ? searchEngine.search(compiledQuery) : null;
+            lastMatches = result == null ? new Object[0] : result.getMatchedElements();
+            lastQuery = query;
+        }
+        return lastMatches;
+    }
+
+    private static CompiledQuery compile(String query) {
+        if (query.startsWith("::")) {
+            return MatchStrategy.REGEX.compile(query.substring(2));
+        } else if (query.startsWith(":")) {
+            return MatchStrategy.SUBSTRING.compile(query.substring(1));
+        }
+        return MatchStrategy.PREFIX.compile(query);
+    }
+
+}
@@ -0,0 +1,162 @@
+package combowidget.impl;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Bounded LRU cache of the pages fetched from a {@link PagedContentProvider}.
+ *
+ * <p>
+ * Pages and item counts are cached per query, so going back to a previous
+ * query (e.g. with backspace) or scrolling back up does not hit the source
+ * again. The least recently used pages are evicted once more than the given
+ * number of pages are cached.
+ * </p>
+ */
+final class PageCache<T> {
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+
+    static final int DEFAULT_MAX_PAGES = 50;
+
+    private final PagedContentProvider<T> provider;
+    private final int pageSize;
+
+    private final Map<PageKey, List<? extends T>> pages;
+    private final Map<String, Integer> itemCounts;
+
+    /*
+     * The index of every cached item per query, so the selection is found
+     * without scanning the cached pages. Maintained together with pages.
+     */
+    private final Map<String, Map<Object, Integer>> indexes = new HashMap<>();
+
+    /**
+     * @param pageSize The number of items fetched at once.
+     * @param maxPages The maximum number of cached pages (and item counts).
+     */
+    PageCache(PagedContentProvider<T> provider, int pageSize, int maxPages) {
+        if (pageSize < 1 || maxPages < 1) {
+            throw new IllegalArgumentException("Page size and max pages must be positive: " + pageSize + ", "
+                    + maxPages);
+        }
+        this.provider = provider;
+        this.pageSize = pageSize;
+        this.pages = createLruMap(maxPages, this::forgetIndexes);
+        this.itemCounts = createLruMap(maxPages, (query, count) -> {
+        });
+    }
+
+    /**
+     * @param evictionHandler Called with each evicted entry.
+     */
+    private static <K, V> Map<K, V> createLruMap(int maxSize, BiConsumer<K, V> evictionHandler) {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > maxSize) {
+                    evictionHandler.accept(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    int getItemCount(String query) {
+        return itemCounts.computeIfAbsent(query, provider::getItemCount);
+    }
+
+    /**
+     * @return The item at the given index of the query's matches or
+     *         {@code null} if the source has less items.
+     */
+    T getItem(String query, int index) {
+        int page = index / pageSize;
+        PageKey key = new PageKey(query, page);
+        List<? extends T> items = pages.get(key);
+        if (items == null) {
+            items = provider.getItems(query, page * pageSize, pageSize);
+            rememberIndexes(key, items);
+            pages.put(key, items);
+        }
+        int offset = index - page * pageSize;
+        return offset < items.size() ? items.get(offset) : null;
+    }
+
+    /**
+     * Looks the given item up in the cached pages of the query. Pages which
+     * are not cached are not fetched.
+     *
+     * @return The index of the item or {@code -1} if it is not cached.
+     */
+    int indexOf(String query, Object item) {
+        Map<Object, Integer> queryIndexes = indexes.get(query);
+        Integer index = queryIndexes == null ? null : queryIndexes.get(item);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Drops all pages and item counts, e.g. because the source has changed.
+     */
+    void invalidate() {
+        pages.clear();
+        itemCounts.clear();
+        indexes.clear();
+    }
+
+    private void rememberIndexes(PageKey key, List<? extends T> items) {
+        Map<Object, Integer> queryIndexes = indexes.computeIfAbsent(key.query, query -> new HashMap<>());
+        for (int offset = 0; offset < items.size(); offset++) {
+            queryIndexes.putIfAbsent(items.get(offset), key.page * pageSize + offset);
+        }
+    }
+
+    private void forgetIndexes(PageKey key, List<? extends T> items) {
+        Map<Object, Integer> queryIndexes = indexes.get(key.query);
+        if (queryIndexes == null) {
+            return;
+        }
+        for (int offset = 0; offset < items.size(); offset++) {
+            queryIndexes.remove(items.get(offset), key.page * pageSize + offset);
+        }
+        if (queryIndexes.isEmpty()) {
+            indexes.remove(key.query);
+        }
+    }
+
+    private static final class PageKey {
+
+        private final String query;
+        private final int page;
+
+        PageKey(String query, int page) {
+            this.query = query;
+            this.page = page;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, page);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof PageKey)) {
+                return false;
+            }
+            PageKey key = (PageKey) other;
+            return page == key.page && query.equals(key.query);
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package combowidget.impl;
+
+import java.util.List;
+
+/**
+ * Supplies the items of an {@link ExtendedComboViewer} page by page, for item
+ * sources which are too big to be loaded into memory, e.g. a table with
+ * millions of rows. Works like a lazy content provider: the viewer asks for
+ * the number of items and fetches ranges of them by index as the rows of the
+ * drop down become visible.
+ *
+ * <p>
+ * The key sequence the user typed is handed over as query, so filtering
+ * happens at the source. The provider decides how to interpret it, e.g. as
+ * prefix of the label or, like the viewer, as substring search if it starts
+ * with {@code ':'}. All methods are called on the UI thread and the items of
+ * a query must have a stable order.
+ * </p>
+ *
+ * @see InMemoryPagedContentProvider
+ */
+public interface PagedContentProvider<T> {
+
+    /**
+     * @param query The key sequence, {@code ""} for all items.
+     * @return The number of items matching the query.
+     */
+    int getItemCount(String query);
+
+    /**
+     * @param query The key sequence, {@code ""} for all items.
+     * @param offset The index of the first item to fetch.
+     * @param limit The maximum number of items to fetch.
+     * @return The matching items from offset on. Less than limit items at
+     *         the end of the matches.
+     */
+    List<? extends T> getItems(String query, int offset, int limit);
+
+}
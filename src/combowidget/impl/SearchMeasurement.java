@@ -0,0 +1,98 @@
+package combowidget.impl;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Timings and counts of one search, i.e. of one evaluation of the key
+ * sequence (fast keystrokes are coalesced into one search). Recorded by the
+ * {@link ExtendedComboViewer} and handed to its
+ * {@link SearchMetricsListener} once the result is shown.
+ */
+public final class SearchMeasurement {
+
+    public enum Mode {
+        STANDARD, SUBSTRING, FIELD, REGEX, FUZZY, NUMERIC, PAGED
+    }
+
+    public enum Phase {
+        /** Testing elements against the query or looking it up in an index. */
+        MATCH,
+        /** Refreshing the viewer and updating the native items. */
+        REFRESH,
+        /** Selecting the first match. */
+        SELECTION,
+        /** Showing the tooltip. */
+        TOOLTIP
+    }
+
+    private final Mode mode;
+    private final long startNanos;
+    private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+    private long totalNanos;
+    private int inputSize;
+    private int itemsScanned;
+    private int matchCount;
+
+    SearchMeasurement(Mode mode, long startNanos) {
+        this.mode = mode;
+        this.startNanos = startNanos;
+    }
+
+    synchronized void addNanos(Phase phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+
+    synchronized void finish(long endNanos, int inputSize, int itemsScanned, int matchCount) {
+        this.totalNanos = endNanos - startNanos;
+        this.inputSize = inputSize;
+        this.itemsScanned = itemsScanned;
+        this.matchCount = matchCount;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return The time spent in the given phase. {@code 0} if the search
+     *         skipped the phase.
+     */
+    public synchronized long getNanos(Phase phase) {
+        Long nanos = phaseNanos.get(phase);
+        return nanos == null ? 0 : nanos;
+    }
+
+    /**
+     * @return The time from the start of the search until its result was
+     *         shown. Includes the time an asynchronous search waited for the
+     *         UI thread.
+     */
+    public synchronized long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public synchronized int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * @return The number of elements which were tested against the query.
+     *         {@code 0} if the query was answered by an index alone.
+     */
+    public synchronized int getItemsScanned() {
+        return itemsScanned;
+    }
+
+    public synchronized int getMatchCount() {
+        return matchCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SearchMeasurement [mode=" + mode + ", totalNanos=" + totalNanos + ", phaseNanos=" + phaseNanos
+                + ", inputSize=" + inputSize + ", itemsScanned=" + itemsScanned + ", matchCount=" + matchCount
+                + "]";
+    }
+
+}
@@ -0,0 +1,21 @@
+package combowidget.impl;
+
+/**
+ * Receives a {@link SearchMeasurement} per search of an
+ * {@link ExtendedComboViewer}. Called on the UI thread, so implementations
+ * should only record the measurement, e.g. in a
+ * {@link HistogramSearchMetrics}.
+ */
+@FunctionalInterface
+public interface SearchMetricsListener {
+
+    /**
+     * Default listener. The viewer does not take any measurements while this
+     * listener is set.
+     */
+    SearchMetricsListener NONE = measurement -> {
+    };
+
+    void searchCompleted(SearchMeasurement measurement);
+
+}
@@ -0,0 +1,89 @@
+package combowidget.impl;
+
+import java.util.function.Function;
+
+import org.eclipse.jface.fieldassist.ControlDecoration;
+import org.eclipse.jface.window.DefaultToolTip;
+import org.eclipse.jface.window.ToolTip;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Shell;
+
+/**
+ * The decoration and the tooltip shared by all lightweight combos of a shell.
+ * A lightweight combo only has a native control while it has the focus, so
+ * there is at most one of them per shell at any time. The shared objects are
+ * disposed together with the shell.
+ *
+ * <p>
+ * A {@link ControlDecoration} cannot be moved to another control. The shared
+ * decoration is recreated whenever another combo of the shell gets the focus.
+ * </p>
+ */
+final class ShellDecorations {
+
+    private static final String DATA_KEY = ShellDecorations.class.getName();
+
+    private final DefaultToolTip toolTip;
+
+    private ControlDecoration decoration;
+    private Control decoratedControl;
+
+    /*
+     * Preferred height of a combo of this shell, lightweight combos paint
+     * themselves with the same height. SWT.DEFAULT until the first combo has
+     * been created.
+     */
+    private int comboHeight = SWT.DEFAULT;
+
+    private ShellDecorations(Shell shell) {
+        toolTip = new DefaultToolTip(shell, ToolTip.RECREATE, true);
+        toolTip.deactivate();
+    }
+
+    /**
+     * @return The decorations of the given shell. Created on first use.
+     */
+    static ShellDecorations get(Shell shell) {
+        ShellDecorations decorations = (ShellDecorations) shell.getData(DATA_KEY);
+        if (decorations == null) {
+            decorations = new ShellDecorations(shell);
+            shell.setData(DATA_KEY, decorations);
+        }
+        return decorations;
+    }
+
+    /**
+     * @return The tooltip of the shell. Its location is relative to the
+     *         shell.
+     */
+    DefaultToolTip getToolTip() {
+        return toolTip;
+    }
+
+    /**
+     * Moves the decoration to the given control.
+     *
+     * @param decorationFactory Creates the decoration on the given control.
+     */
+    void decorate(Control control, Function<Control, ControlDecoration> decorationFactory) {
+        if (decoratedControl == control) {
+            return;
+        }
+        // a decoration disposes itself together with its control
+        if (decoration != null && !decoratedControl.isDisposed()) {
+            decoration.dispose();
+        }
+        decoration = decorationFactory.apply(control);
+        decoratedControl = control;
+    }
+
+    int getComboHeight() {
+        return comboHeight;
+    }
+
+    void setComboHeight(int comboHeight) {
+        this.comboHeight = comboHeight;
+    }
+
+}
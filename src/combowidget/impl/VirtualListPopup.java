@@ -0,0 +1,175 @@
+package combowidget.impl;
+
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
+
+/**
+ * Drop down list which replaces the native list of a combo for huge inputs.
+ *
+ * <p>
+ * The list is a {@link SWT#VIRTUAL} table in a borderless shell below the
+ * owner control. Only the rows which become visible are materialized, so
+ * opening the list and changing its contents does not depend on the number of
+ * items. Labels are pulled from the owner on demand.
+ * </p>
+ *
+ * <p>
+ * The owner keeps the keyboard focus while the list is open and is
+ * responsible for keyboard navigation. The list closes itself when the focus
+ * leaves both the list and the owner, e.g. to another window.
+ * </p>
+ */
+final class VirtualListPopup {
+
+    static final int VISIBLE_ITEM_COUNT = 15;
+
+    private final Control owner;
+    private final IntFunction<String> labelProvider;
+    private final IntConsumer selectionHandler;
+    private final Runnable focusLostHandler;
+
+    private Shell shell;
+    private Table table;
+    private int itemCount;
+
+    /**
+     * @param owner The control below which the list is opened.
+     * @param labelProvider Returns the label of the item at a given index.
+     * @param selectionHandler Called with the index of the item the user
+     *        clicked.
+     * @param focusLostHandler Called after the list was closed because the
+     *        focus moved from the list to another control than the owner.
+     */
+    VirtualListPopup(Control owner, IntFunction<String> labelProvider, IntConsumer selectionHandler,
+            Runnable focusLostHandler) {
+        this.owner = owner;
+        this.labelProvider = labelProvider;
+        this.selectionHandler = selectionHandler;
+        this.focusLostHandler = focusLostHandler;
+        owner.addListener(SWT.Dispose, event -> dispose());
+    }
+
+    private void create() {
+
+        shell = new Shell(owner.getShell(), SWT.NO_TRIM | SWT.ON_TOP | SWT.TOOL);
+        shell.setLayout(new FillLayout());
+
+        table = new Table(shell, SWT.VIRTUAL | SWT.SINGLE | SWT.FULL_SELECTION | SWT.V_SCROLL | SWT.BORDER);
+        table.setFont(owner.getFont());
+
+        table.addListener(SWT.SetData, event -> {
+            TableItem item = (TableItem) event.item;
+            item.setText(labelProvider.apply(event.index));
+        });
+
+        Listener selectionListener = event -> {
+            int index = table.getSelectionIndex();
+            if (index > -1) {
+                selectionHandler.accept(index);
+            }
+        };
+        table.addListener(SWT.MouseUp, selectionListener);
+        table.addListener(SWT.DefaultSelection, selectionListener);
+
+        // the list must not float around when the owner's shell is moved
+        Listener hideListener = event -> setVisible(false);
+        owner.getShell().addListener(SWT.Move, hideListener);
+        owner.getShell().addListener(SWT.Resize, hideListener);
+        // the focus is only known after the deactivation has been processed
+        shell.addListener(SWT.Deactivate, event -> shell.getDisplay().asyncExec(() -> {
+            if (isVisible() && !table.isFocusControl() && !owner.isDisposed() && !owner.isFocusControl()) {
+                setVisible(false);
+                focusLostHandler.run();
+            }
+        }));
+        shell.addListener(SWT.Dispose, event -> {
+            if (!owner.isDisposed()) {
+                owner.getShell().removeListener(SWT.Move, hideListener);
+                owner.getShell().removeListener(SWT.Resize, hideListener);
+            }
+        });
+    }
+
+    boolean isVisible() {
+        return shell != null && !shell.isDisposed() && shell.isVisible();
+    }
+
+    /**
+     * @return {@code true} if the list (and not the owner) currently has the
+     *         keyboard focus, e.g. because the user clicked into it.
+     */
+    boolean hasFocus() {
+        return isVisible() && table.isFocusControl();
+    }
+
+    void setVisible(boolean visible) {
+        if (visible == isVisible()) {
+            return;
+        }
+        if (!visible) {
+            shell.setVisible(false);
+            return;
+        }
+        if (shell == null || shell.isDisposed()) {
+            create();
+        }
+        refresh();
+        layout();
+        shell.setVisible(true);
+    }
+
+    /**
+     * Discards all materialized rows. Call after the items have changed.
+     *
+     * @param count The new number of items.
+     */
+    void setItemCount(int count) {
+        this.itemCount = count;
+        if (isVisible()) {
+            refresh();
+            layout();
+        }
+    }
+
+    void setSelection(int index) {
+        if (shell == null || shell.isDisposed()) {
+            return;
+        }
+        if (index < 0 || index >= itemCount) {
+            table.deselectAll();
+        } else {
+            table.setSelection(index);
+            table.showSelection();
+        }
+    }
+
+    void dispose() {
+        if (shell != null && !shell.isDisposed()) {
+            shell.dispose();
+        }
+    }
+
+    private void refresh() {
+        table.setItemCount(itemCount);
+        table.clearAll();
+    }
+
+    private void layout() {
+        Rectangle bounds = owner.getBounds();
+        Point location = owner.getParent().toDisplay(bounds.x, bounds.y + bounds.height);
+        int rows = Math.max(1, Math.min(itemCount, VISIBLE_ITEM_COUNT));
+        int height = rows * table.getItemHeight() + 4;
+        shell.setBounds(location.x, location.y, bounds.width, height);
+    }
+
+}
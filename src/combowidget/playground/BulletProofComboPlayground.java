@@ -33,8 +33,8 @@ public class BulletProofComboPlayground {
     protected Shell shell;
     protected static final List<String> items = Data.ITEMS;
 
-    private ComboWidget comboViewerBpc;
-    private ComboWidget comboViewerBpcOpt;
+    private ComboWidget<String> comboViewerBpc;
+    private ComboWidget<String> comboViewerBpcOpt;
     private ComboViewer comboViewerRoc;
     private ComboViewer comboViewerRwc;
     private ComboViewer comboViewerRocWithAssist;
@@ -163,7 +163,7 @@ public class BulletProofComboPlayground {
                 // BPC
                 String comboText = comboViewerBpc.getControl().getText();
                 String comboItem = comboViewerBpc.getControl().getSelectionIndex() < 0 ? "n/a (sel. index is < 0)" : comboViewerBpc.getControl().getItem(comboViewerBpc.getControl().getSelectionIndex());
-                String structuredSelectionAsStr = ((String)comboViewerBpc.getViewer().getStructuredSelection().getFirstElement());
+                String structuredSelectionAsStr = comboViewerBpc.getSelectedElement();
 
                 StringBuilder sb = new StringBuilder();
                 sb.append("combo.getText():\t\t" + comboText + "\n" );
@@ -175,7 +175,7 @@ public class BulletProofComboPlayground {
                 // BPC optional
                 comboText = comboViewerBpc.getControl().getText();
                 comboItem = comboViewerBpc.getControl().getSelectionIndex() < 0 ? "n/a (sel. index is < 0)" : comboViewerBpc.getControl().getItem(comboViewerBpc.getControl().getSelectionIndex());
-                structuredSelectionAsStr = ((String)comboViewerBpc.getViewer().getStructuredSelection().getFirstElement());
+                structuredSelectionAsStr = comboViewerBpc.getSelectedElement();
 
                 sb = new StringBuilder();
                 sb.append("combo.getText():\t\t" + comboText + "\n" );
@@ -249,10 +249,11 @@ public class BulletProofComboPlayground {
         widgetLabel.setLayoutData(new GridData(SWT.RIGHT, SWT.CENTER, false, false, 1, 1));
         widgetLabel.setText("bullet proof combo");
 
-        comboViewerBpc = new ComboWidget(shell, SWT.NONE, false);
+        comboViewerBpc = new ComboWidget<>(shell, SWT.NONE, false);
         comboViewerBpc.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 1, 1));
 
         comboViewerBpc.getViewer().setContentProvider(new ArrayContentProvider());
+        comboViewerBpc.getViewer().setNumericKeyExtractor(String::valueOf);
         comboViewerBpc.getViewer().setInput(items);
 
         Label currentSelection = new Label(shell, SWT.NONE);
@@ -274,7 +275,7 @@ public class BulletProofComboPlayground {
         widgetLabel.setLayoutData(new GridData(SWT.RIGHT, SWT.CENTER, false, false, 1, 1));
         widgetLabel.setText("optional bullet proof combo");
 
-        comboViewerBpcOpt = new ComboWidget(shell, SWT.NONE, true);
+        comboViewerBpcOpt = new ComboWidget<>(shell, SWT.NONE, true);
         comboViewerBpcOpt.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 1, 1));
 
         comboViewerBpcOpt.getViewer().setContentProvider(new ArrayContentProvider());